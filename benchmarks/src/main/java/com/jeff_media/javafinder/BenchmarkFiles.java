@@ -0,0 +1,122 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Creates fake Java installations and directory trees for the benchmarks
+ */
+final class BenchmarkFiles {
+
+    static final String[] POST_9_OUTPUT = {
+            "openjdk version \"17.0.9\" 2023-10-17",
+            "OpenJDK Runtime Environment Temurin-17.0.9+9 (build 17.0.9+9)",
+            "OpenJDK 64-Bit Server VM Temurin-17.0.9+9 (build 17.0.9+9, mixed mode, sharing)"
+    };
+
+    static final String[] PRE_9_OUTPUT = {
+            "openjdk version \"1.8.0_392\"",
+            "OpenJDK Runtime Environment (Temurin)(build 1.8.0_392-b08)",
+            "OpenJDK 64-Bit Server VM (Temurin)(build 25.392-b08, mixed mode)"
+    };
+
+    private BenchmarkFiles() {
+
+    }
+
+    /**
+     * Creates a Java home with a fake java executable that prints the given output to stderr, and a release file
+     */
+    static File createJavaHome(Path home, String[] versionOutput, boolean withReleaseFile) throws IOException {
+        Path bin = Files.createDirectories(home.resolve("bin"));
+        StringBuilder script = new StringBuilder("#!/bin/sh\n");
+        for (String line : versionOutput) {
+            script.append("echo '").append(line).append("' >&2\n");
+        }
+        Path java = bin.resolve(OperatingSystem.CURRENT.getJavaExecutableName());
+        Files.write(java, script.toString().getBytes(StandardCharsets.UTF_8));
+        if (!java.toFile().setExecutable(true)) {
+            throw new IOException("Could not make " + java + " executable");
+        }
+        if (withReleaseFile) {
+            Files.write(home.resolve("release"), Arrays.asList(
+                    "IMPLEMENTOR=\"Eclipse Adoptium\"",
+                    "JAVA_RUNTIME_VERSION=\"17.0.9+9\"",
+                    "JAVA_VERSION=\"17.0.9\"",
+                    "OS_ARCH=\"x86_64\""
+            ), StandardCharsets.UTF_8);
+        }
+        // Some typical content that the crawler shouldn't have to look at
+        Files.createDirectories(home.resolve("lib").resolve("server"));
+        Files.createDirectories(home.resolve("legal").resolve("java.base"));
+        return home.toFile();
+    }
+
+    /**
+     * Creates a directory tree of the given width and depth. Every leaf directory with an index divisible by
+     * homeInterval becomes a Java home.
+     */
+    static void createTree(Path root, int width, int depth, int homeInterval) throws IOException {
+        createTree(root, width, depth, homeInterval, new int[1]);
+    }
+
+    private static void createTree(Path directory, int width, int depth, int homeInterval, int[] leafCounter) throws IOException {
+        Files.createDirectories(directory);
+        if (depth == 0) {
+            if (leafCounter[0]++ % homeInterval == 0) {
+                createJavaHome(directory.resolve("jdk"), POST_9_OUTPUT, true);
+            }
+            return;
+        }
+        for (int i = 0; i < width; i++) {
+            createTree(directory.resolve("dir" + i), width, depth - 1, homeInterval, leafCounter);
+        }
+    }
+
+    static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
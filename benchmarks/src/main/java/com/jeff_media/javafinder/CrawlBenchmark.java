@@ -0,0 +1,86 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures crawling synthetic directory trees. Versions are read from release files, so no processes are spawned.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CrawlBenchmark {
+
+    @Param({"4", "16"})
+    public int width;
+
+    @Param({"2", "4"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Path root;
+    private JavaFinder finder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("javafinder-crawl-benchmark");
+        BenchmarkFiles.createTree(root, width, depth, 7);
+        finder = JavaFinder.builder()
+                .checkDefaultLocations(false)
+                .addSearchDirectories(root.toFile())
+                .versionDetectionMode(VersionDetectionMode.RELEASE_FILE)
+                .parallelCrawl(parallel)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(root);
+    }
+
+    @Benchmark
+    public Set<JavaInstallation> crawl() {
+        ScanContext context = new ScanContext(finder);
+        new DirectoryCrawler(root.toFile(), OperatingSystem.CURRENT, context).crawl();
+        context.whenProbesFinished().join();
+        return context.getInstallations();
+    }
+
+    @Benchmark
+    public int findInstallationsAsync() {
+        return finder.findInstallationsAsync().join().size();
+    }
+}
@@ -0,0 +1,79 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of detecting a version, using a shell script as fake java executable. The spawn benchmarks
+ * therefore measure the cost of starting a process, not the startup time of a real JVM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProbeBenchmark {
+
+    private Path root;
+    private File home;
+    private File javaExecutable;
+    private ProbeExecutor probeExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("javafinder-probe-benchmark");
+        home = BenchmarkFiles.createJavaHome(root.resolve("jdk"), BenchmarkFiles.POST_9_OUTPUT, true);
+        javaExecutable = new File(new File(home, "bin"), OperatingSystem.CURRENT.getJavaExecutableName());
+        probeExecutor = new ProbeExecutor(ProbeExecutor.DEFAULT_MAX_CONCURRENT_PROBES, Duration.ofSeconds(10), false, DefaultExecutors.probe());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(root);
+    }
+
+    @Benchmark
+    public ProbeResult spawnProcess() {
+        return probeExecutor.probe(javaExecutable);
+    }
+
+    @Benchmark
+    public ProbeResult readReleaseFile() {
+        return JavaInstallation.probeVersion(home, javaExecutable, VersionDetectionMode.RELEASE_FILE, probeExecutor);
+    }
+
+    @Benchmark
+    public ProbeResult auto() {
+        return JavaInstallation.probeVersion(home, javaExecutable, VersionDetectionMode.AUTO, probeExecutor);
+    }
+}
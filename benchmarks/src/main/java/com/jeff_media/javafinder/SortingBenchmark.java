@@ -0,0 +1,87 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures comparing, hashing and sorting of large lists of installations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortingBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private List<JavaInstallation> installations;
+
+    @Setup
+    public void setup() {
+        // Fixed seed, so every run and every commit sorts the same input
+        Random random = new Random(42);
+        installations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int major = 8 + random.nextInt(15);
+            int security = random.nextInt(30);
+            String shortVersion = major == 8 ? "1.8.0_" + security : major + ".0." + security;
+            List<String> output = new ArrayList<>(Arrays.asList(
+                    "openjdk version \"" + shortVersion + "\"",
+                    "OpenJDK Runtime Environment (build " + shortVersion + "+" + random.nextInt(20) + ")"));
+            JavaVersion version = JavaVersion.fromJavaVersionOutput(output);
+            JavaType type = random.nextBoolean() ? JavaType.JDK : JavaType.JRE;
+            File home = new File("/opt/java/" + i);
+            installations.add(new JavaInstallation(home, new File(home, "bin/java"), null, type, version));
+        }
+    }
+
+    @Benchmark
+    public List<JavaInstallation> sort() {
+        List<JavaInstallation> copy = new ArrayList<>(installations);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public Set<JavaInstallation> hashSet() {
+        return new HashSet<>(installations);
+    }
+
+    @Benchmark
+    public int compareAdjacent() {
+        int result = 0;
+        for (int i = 1; i < installations.size(); i++) {
+            result += installations.get(i - 1).compareTo(installations.get(i));
+        }
+        return result;
+    }
+}
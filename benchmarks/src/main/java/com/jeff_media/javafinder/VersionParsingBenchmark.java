@@ -0,0 +1,55 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of {@code java -version} output in the pre-9 and post-9 formats
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VersionParsingBenchmark {
+
+    private final List<String> post9Output = Arrays.asList(BenchmarkFiles.POST_9_OUTPUT);
+    private final List<String> pre9Output = Arrays.asList(BenchmarkFiles.PRE_9_OUTPUT);
+
+    @Benchmark
+    public JavaVersion parsePost9() {
+        return JavaVersion.fromJavaVersionOutput(post9Output, false);
+    }
+
+    @Benchmark
+    public JavaVersion parsePre9() {
+        return JavaVersion.fromJavaVersionOutput(pre9Output, false);
+    }
+}
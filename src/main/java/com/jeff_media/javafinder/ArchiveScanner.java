@@ -0,0 +1,634 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds Java installations inside of {@code .tar}, {@code .tar.gz} and {@code .zip} archives, e.g. toolchain archives
+ * or container images saved using {@code docker save}, without extracting them.
+ * <p>
+ * Tar archives are read in a single streaming pass. Only entry headers and {@code release} files are looked at, all
+ * other contents are skipped, so memory use doesn't depend on the size of the archive. Nested tar archives, like the
+ * layers of a container image, are scanned while streaming through the outer archive. Zips are read through their
+ * central directory instead.
+ * <p>
+ * The same rules as for directories apply: a Java home is a directory that contains {@code bin/java} (or
+ * {@code bin/java.exe}), it's a JDK if it also contains {@code bin/javac}, and Java homes inside of other Java homes
+ * are only considered at the locations of nested runtimes, like the {@code jre} directory of JDK 8. The version is
+ * read from the home's {@code release} file, or from the outer home's one for nested runtimes. Homes without a
+ * parseable {@code release} file are ignored. Symbolic links are ignored too, because their targets can't be resolved
+ * without extracting the archive.
+ */
+public final class ArchiveScanner {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int MAX_NESTING_DEPTH = 2;
+
+    /**
+     * Release files, GNU long names and pax headers are read into memory, but never more than this
+     */
+    private static final int MAX_METADATA_SIZE = 64 * 1024;
+
+    private static final Set<String> JAVA_EXECUTABLE_NAMES = new HashSet<>();
+    private static final Set<String> JAVAC_EXECUTABLE_NAMES = new HashSet<>();
+
+    static {
+        for (OperatingSystem os : OperatingSystem.values()) {
+            JAVA_EXECUTABLE_NAMES.add(os.getJavaExecutableName());
+            JAVAC_EXECUTABLE_NAMES.add(os.getJavacExecutableName());
+        }
+    }
+
+    private final @NotNull File archive;
+    private final @NotNull Map<String, Home> homes = new LinkedHashMap<>();
+
+    private ArchiveScanner(@NotNull File archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Finds the Java installations inside of the given archive. The format is detected from the archive's contents,
+     * not from its name.
+     *
+     * @param archive {@code .tar}, {@code .tar.gz} or {@code .zip} file
+     * @return list of found Java installations, sorted from newest to oldest, and JDKs before JREs of the same version
+     * @throws IOException if the archive can't be read, or isn't a supported archive
+     */
+    public static @NotNull List<ArchivedJavaInstallation> scan(@NotNull File archive) throws IOException {
+        ArchiveScanner scanner = new ArchiveScanner(archive);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(archive))) {
+            if (isZip(in)) {
+                scanner.scanZip();
+            } else if (!scanner.scanArchive(in, "", 0)) {
+                throw new IOException("Not a tar, tar.gz or zip archive: " + archive.getAbsolutePath());
+            }
+        }
+        return scanner.getInstallations();
+    }
+
+    /**
+     * Scans a tar or tar.gz archive. Returns false if it's neither.
+     *
+     * @param in     stream that supports {@link InputStream#mark(int)}. It doesn't get closed.
+     * @param prefix path of the archive inside of the outer archive, followed by the separator, or an empty string
+     */
+    private boolean scanArchive(@NotNull InputStream in, @NotNull String prefix, int depth) throws IOException {
+        byte[] start = new byte[BLOCK_SIZE];
+        in.mark(BLOCK_SIZE);
+        int length = readFully(in, start);
+        in.reset();
+
+        if (length >= 2 && (start[0] & 0xff) == 0x1f && (start[1] & 0xff) == 0x8b) {
+            try (InputStream gunzipped = new BufferedInputStream(new GZIPInputStream(new UnclosableInputStream(in)))) {
+                // Compressed zips don't exist in practice, so this must be a tar
+                return scanTar(gunzipped, prefix, depth, true);
+            }
+        }
+        if (length == BLOCK_SIZE && isTarHeader(start)) {
+            return scanTar(in, prefix, depth, false);
+        }
+        return false;
+    }
+
+    private boolean scanTar(@NotNull InputStream in, @NotNull String prefix, int depth, boolean mustBeTar) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        if (mustBeTar) {
+            in.mark(BLOCK_SIZE);
+            boolean isTar = readFully(in, header) == BLOCK_SIZE && isTarHeader(header);
+            in.reset();
+            if (!isTar) {
+                return false;
+            }
+        }
+
+        String lastName = null;
+        String longName = null;
+        String paxPath = null;
+        long paxSize = -1;
+        while (readFully(in, header) == BLOCK_SIZE && !isZeroBlock(header)) {
+            if (!isTarHeader(header)) {
+                throw new IOException("Corrupt tar header in " + archive.getAbsolutePath()
+                        + (lastName == null ? " at the start of " + (prefix.isEmpty() ? "the archive" : prefix) : " after " + prefix + lastName));
+            }
+            char type = (char) header[156];
+            long headerSize = parseNumber(header, 124, 12);
+            long padding = (BLOCK_SIZE - headerSize % BLOCK_SIZE) % BLOCK_SIZE;
+            switch (type) {
+                case 'L': // GNU long name of the next entry
+                    longName = trimNul(readMetadata(in, headerSize));
+                    skipFully(in, padding);
+                    continue;
+                case 'x': // pax extended header of the next entry
+                    Map<String, String> pax = parsePax(readMetadata(in, headerSize));
+                    paxPath = pax.get("path");
+                    paxSize = pax.containsKey("size") ? parsePaxSize(pax.get("size")) : -1;
+                    skipFully(in, padding);
+                    continue;
+                case 'g': // pax global header
+                case 'K': // GNU long link name
+                    skipFully(in, headerSize + padding);
+                    continue;
+                default:
+                    break;
+            }
+
+            String name = paxPath != null ? paxPath : longName != null ? longName : readName(header);
+            long size = paxSize >= 0 ? paxSize : headerSize;
+            padding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+            longName = null;
+            paxPath = null;
+            paxSize = -1;
+            lastName = name;
+
+            boolean isFile = type == '0' || type == '\0' || type == '7' || type == '1';
+            boolean isExecutable = (parseNumber(header, 100, 8) & 0111) != 0;
+            EntryInputStream content = new EntryInputStream(in, type == '1' ? 0 : size);
+            if (isFile) {
+                onFile(prefix, name, isExecutable, content, type == '1' ? 0 : size, depth);
+            }
+            content.skipRemaining();
+            skipFully(in, padding);
+        }
+        return true;
+    }
+
+    private static boolean isZip(@NotNull InputStream in) throws IOException {
+        byte[] start = new byte[4];
+        in.mark(start.length);
+        int length = readFully(in, start);
+        in.reset();
+        return length == start.length && start[0] == 'P' && start[1] == 'K' && start[2] == 3 && start[3] == 4;
+    }
+
+    /**
+     * Zips are read through their central directory instead of streaming through them, so compressed entries don't
+     * have to be inflated just to skip them
+     */
+    private void scanZip() throws IOException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                // Zips don't reliably store permissions, so every file counts as executable
+                try (InputStream content = new LazyEntryInputStream(zip, entry)) {
+                    onFile("", entry.getName(), true, content, entry.getSize(), 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param content contents of the entry. Doesn't have to be read completely, and doesn't get closed.
+     * @param size    size of the contents, or -1 if unknown
+     */
+    private void onFile(@NotNull String prefix, @NotNull String entryName, boolean isExecutable, @NotNull InputStream content, long size, int depth) throws IOException {
+        String path = normalize(entryName);
+        int nameStart = path.lastIndexOf('/') + 1;
+        String fileName = path.substring(nameStart);
+        String directory = nameStart == 0 ? "" : path.substring(0, nameStart - 1);
+
+        if (ReleaseFile.FILE_NAME.equals(fileName)) {
+            JavaVersion version = size > MAX_METADATA_SIZE ? null : readReleaseFile(content);
+            if (version != null) {
+                home(prefix + directory).version = version;
+            }
+            return;
+        }
+
+        String binName = directory.substring(directory.lastIndexOf('/') + 1);
+        if (JavaHomeLayout.isBinDirectory(binName) && isExecutable) {
+            String homePath = prefix + directory.substring(0, Math.max(0, directory.length() - binName.length() - 1));
+            if (JAVA_EXECUTABLE_NAMES.contains(fileName)) {
+                home(homePath).hasJava = true;
+                return;
+            }
+            if (JAVAC_EXECUTABLE_NAMES.contains(fileName)) {
+                home(homePath).hasJavac = true;
+                return;
+            }
+        }
+
+        if (depth < MAX_NESTING_DEPTH && mightBeArchive(path)) {
+            // Unsupported formats are just skipped, and so are corrupt nested archives. The caller skips the rest of
+            // the entry, so the outer archive can still be read.
+            try {
+                scanArchive(new BufferedInputStream(new UnclosableInputStream(content)), prefix + path + ArchivedJavaInstallation.NESTED_ARCHIVE_SEPARATOR, depth + 1);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Nested zips aren't scanned: every JDK contains a src.zip, and container image layers are always tars
+     */
+    private static boolean mightBeArchive(@NotNull String path) {
+        // OCI image layouts store their layers as blobs without file extension
+        return path.endsWith(".tar") || path.endsWith(".tar.gz") || path.endsWith(".tgz") || path.startsWith("blobs/");
+    }
+
+    private @NotNull Home home(@NotNull String path) {
+        return homes.computeIfAbsent(path, key -> new Home());
+    }
+
+    private static @Nullable JavaVersion readReleaseFile(@NotNull InputStream content) {
+        try {
+            InputStream limited = new EntryInputStream(content, MAX_METADATA_SIZE);
+            Map<String, String> properties = ReleaseFile.parse(new BufferedReader(new InputStreamReader(limited, StandardCharsets.UTF_8)));
+            return properties.containsKey(ReleaseFile.JAVA_VERSION) ? JavaVersion.fromReleaseProperties(properties) : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Applies the same rules as {@link DirectoryCrawler} to the collected homes
+     */
+    private @NotNull List<ArchivedJavaInstallation> getInstallations() {
+        List<ArchivedJavaInstallation> installations = new ArrayList<>();
+        for (Map.Entry<String, Home> entry : homes.entrySet()) {
+            String path = entry.getKey();
+            Home home = entry.getValue();
+            if (!home.hasJava || isExcluded(path)) {
+                continue;
+            }
+            String outerHome = getOuterHome(path);
+            JavaVersion version = home.version;
+            if (version == null && outerHome != null && homes.containsKey(outerHome)) {
+                version = homes.get(outerHome).version;
+            }
+            if (version == null) {
+                continue;
+            }
+            installations.add(new ArchivedJavaInstallation(archive, path, home.hasJavac ? JavaType.JDK : JavaType.JRE, version));
+        }
+        installations.sort(null);
+        return installations;
+    }
+
+    /**
+     * Whether the crawler wouldn't have found the home, because it's located in an excluded directory or inside of
+     * another home without being a nested runtime. Homes are never nested across archives.
+     */
+    private boolean isExcluded(@NotNull String path) {
+        int innerStart = innerPathStart(path);
+        String outerHome = getOuterHome(path);
+        for (String name : path.substring(innerStart).split("/")) {
+            if (JavaHomeLayout.DEFAULT_EXCLUDED_DIRECTORY_NAMES.contains(name)) {
+                return true;
+            }
+        }
+        for (int separator = path.indexOf('/', innerStart); separator >= 0; separator = path.indexOf('/', separator + 1)) {
+            String ancestor = path.substring(0, separator);
+            Home home = homes.get(ancestor);
+            if (home != null && home.hasJava && !ancestor.equals(outerHome)) {
+                return true;
+            }
+        }
+        Home archiveRoot = innerStart == path.length() ? null : homes.get(path.substring(0, innerStart));
+        return archiveRoot != null && archiveRoot.hasJava && !path.substring(0, innerStart).equals(outerHome);
+    }
+
+    /**
+     * Equivalent of {@link JavaHomeLayout#getOuterHome(File)} for paths inside of an archive
+     */
+    private static @Nullable String getOuterHome(@NotNull String path) {
+        int innerStart = innerPathStart(path);
+        String innerPath = path.substring(innerStart);
+        for (List<String> nestedRuntime : JavaHomeLayout.NESTED_RUNTIMES) {
+            String suffix = String.join("/", nestedRuntime);
+            if (innerPath.equals(suffix)) {
+                return path.substring(0, innerStart);
+            }
+            if (innerPath.endsWith("/" + suffix)) {
+                return path.substring(0, path.length() - suffix.length() - 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns where the path inside of the innermost archive starts
+     */
+    private static int innerPathStart(@NotNull String path) {
+        int separator = path.lastIndexOf(ArchivedJavaInstallation.NESTED_ARCHIVE_SEPARATOR);
+        return separator < 0 ? 0 : separator + ArchivedJavaInstallation.NESTED_ARCHIVE_SEPARATOR.length();
+    }
+
+    /**
+     * Removes leading "./" and "/" and trailing slashes, as created by {@code tar -C dir .} or absolute paths
+     */
+    private static @NotNull String normalize(@NotNull String entryName) {
+        String path = entryName.replace('\\', '/');
+        while (path.startsWith("./") || path.startsWith("/")) {
+            path = path.substring(path.charAt(0) == '.' ? 2 : 1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    // Tar format, see https://www.gnu.org/software/tar/manual/html_node/Standard.html
+
+    private static boolean isTarHeader(byte[] header) {
+        long stored = parseNumber(header, 148, 8);
+        long unsigned = 0;
+        long signed = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            byte value = i >= 148 && i < 156 ? (byte) ' ' : header[i];
+            unsigned += value & 0xff;
+            signed += value;
+        }
+        // Some old implementations computed the checksum using signed bytes
+        return stored == unsigned || stored == signed;
+    }
+
+    private static boolean isZeroBlock(byte[] header) {
+        for (byte value : header) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static @NotNull String readName(byte[] header) {
+        String name = readString(header, 0, 100);
+        // POSIX ustar stores long paths in a separate prefix field. GNU tar uses that space for other things.
+        boolean isPosix = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r' && header[262] == 0;
+        String namePrefix = isPosix ? readString(header, 345, 155) : "";
+        return namePrefix.isEmpty() ? name : namePrefix + "/" + name;
+    }
+
+    private static @NotNull String readString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses an octal number, or a big-endian binary number if the highest bit of the first byte is set
+     */
+    private static long parseNumber(byte[] header, int offset, int length) {
+        long result = 0;
+        if ((header[offset] & 0x80) != 0) {
+            result = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                result = (result << 8) | (header[i] & 0xff);
+            }
+            return result;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            byte digit = header[i];
+            if (digit >= '0' && digit <= '7') {
+                result = (result << 3) | (digit - '0');
+            } else if (digit == 0 || (digit == ' ' && result != 0)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses pax records of the form "length key=value\n"
+     */
+    private static @NotNull Map<String, String> parsePax(@NotNull String records) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            int equals = record.indexOf('=', space + 1);
+            if (space > 0 && equals > space) {
+                result.put(record.substring(space + 1, equals), record.substring(equals + 1));
+            }
+        }
+        return result;
+    }
+
+    private long parsePaxSize(@NotNull String value) throws IOException {
+        try {
+            long size = Long.parseLong(value.trim());
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IOException("Invalid size \"" + value + "\" in pax header in " + archive.getAbsolutePath());
+    }
+
+    private static @NotNull String trimNul(@NotNull String value) {
+        int end = value.indexOf('\0');
+        return end < 0 ? value : value.substring(0, end);
+    }
+
+    private @NotNull String readMetadata(@NotNull InputStream in, long size) throws IOException {
+        if (size > MAX_METADATA_SIZE) {
+            throw new IOException("Tar metadata entry of " + size + " bytes in " + archive.getAbsolutePath() + " is too large");
+        }
+        byte[] data = new byte[(int) size];
+        if (readFully(in, data) != size) {
+            throw new IOException("Unexpected end of " + archive.getAbsolutePath());
+        }
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static int readFully(@NotNull InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void skipFully(@NotNull InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // skip() may return 0 before the end of the stream, so read() is the only way to tell
+                if (in.read() < 0) {
+                    throw new IOException("Unexpected end of archive");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * What has been found out about a possible Java home so far
+     */
+    private static class Home {
+        boolean hasJava;
+        boolean hasJavac;
+        @Nullable JavaVersion version;
+    }
+
+    /**
+     * Contents of a single entry. Closing it doesn't close the archive.
+     */
+    private static class EntryInputStream extends FilterInputStream {
+
+        long remaining;
+
+        EntryInputStream(@NotNull InputStream in, long size) {
+            super(in);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int result = in.read();
+            if (result >= 0) {
+                remaining--;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = in.skip(Math.min(count, remaining));
+            remaining -= Math.max(0, skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+
+        }
+
+        void skipRemaining() throws IOException {
+            skipFully(in, remaining);
+            remaining = 0;
+        }
+    }
+
+    /**
+     * Only opens a zip entry once it's actually read, since most entries are never looked at
+     */
+    private static class LazyEntryInputStream extends InputStream {
+
+        private final @NotNull ZipFile zip;
+        private final @NotNull ZipEntry entry;
+        private @Nullable InputStream in;
+
+        LazyEntryInputStream(@NotNull ZipFile zip, @NotNull ZipEntry entry) {
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        private @NotNull InputStream open() throws IOException {
+            if (in == null) {
+                in = zip.getInputStream(entry);
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return open().read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return open().read(buffer, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Keeps the decompressing streams of nested archives from closing the outer archive
+     */
+    private static class UnclosableInputStream extends FilterInputStream {
+
+        UnclosableInputStream(@NotNull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * A Java installation found inside an archive by {@link ArchiveScanner}, without extracting it. Its version has been
+ * read from the {@code release} file, so it can't be run.
+ */
+public class ArchivedJavaInstallation implements Comparable<ArchivedJavaInstallation> {
+
+    /**
+     * Separates the path of a nested archive from the paths of its entries, e.g.
+     * {@code blobs/sha256/0a1b...!/usr/lib/jvm/java-17-openjdk-amd64}
+     */
+    public static final String NESTED_ARCHIVE_SEPARATOR = "!/";
+
+    private final @NotNull File archive;
+    private final @NotNull String homePath;
+    private final @NotNull JavaType type;
+    private final @NotNull JavaVersion version;
+
+    ArchivedJavaInstallation(@NotNull File archive, @NotNull String homePath, @NotNull JavaType type, @NotNull JavaVersion version) {
+        this.archive = archive;
+        this.homePath = homePath;
+        this.type = type;
+        this.version = version;
+    }
+
+    /**
+     * Returns the archive that contains this Java installation
+     *
+     * @return archive file
+     */
+    public @NotNull File getArchive() {
+        return this.archive;
+    }
+
+    /**
+     * Returns the path of the home directory inside the archive, without a leading or trailing slash. Empty if the
+     * archive's root is the home directory. Paths inside nested archives, like the layers of a container image, are
+     * prefixed with the nested archive's path and {@link #NESTED_ARCHIVE_SEPARATOR}.
+     *
+     * @return path of the home directory inside the archive
+     */
+    public @NotNull String getHomePath() {
+        return this.homePath;
+    }
+
+    /**
+     * Returns the type of this Java installation (JDK or JRE)
+     *
+     * @return type
+     */
+    public @NotNull JavaType getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the version of this Java installation
+     *
+     * @return version
+     */
+    public @NotNull JavaVersion getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public int compareTo(final ArchivedJavaInstallation o) {
+        int result = version.compareTo(o.version);
+        if (result != 0) {
+            return result;
+        }
+        return type.compareTo(o.type);
+    }
+
+    public boolean equals(final Object o) {
+        if (o == this) return true;
+        if (!(o instanceof ArchivedJavaInstallation)) return false;
+        final ArchivedJavaInstallation other = (ArchivedJavaInstallation) o;
+        if (!other.canEqual((Object) this)) return false;
+        final Object this$archive = this.getArchive();
+        final Object other$archive = other.getArchive();
+        if (this$archive == null ? other$archive != null : !this$archive.equals(other$archive)) return false;
+        final Object this$homePath = this.getHomePath();
+        final Object other$homePath = other.getHomePath();
+        if (this$homePath == null ? other$homePath != null : !this$homePath.equals(other$homePath)) return false;
+        final Object this$type = this.getType();
+        final Object other$type = other.getType();
+        if (this$type == null ? other$type != null : !this$type.equals(other$type)) return false;
+        final Object this$version = this.getVersion();
+        final Object other$version = other.getVersion();
+        if (this$version == null ? other$version != null : !this$version.equals(other$version)) return false;
+        return true;
+    }
+
+    protected boolean canEqual(final Object other) {
+        return other instanceof ArchivedJavaInstallation;
+    }
+
+    public int hashCode() {
+        final int PRIME = 59;
+        int result = 1;
+        final Object $archive = this.getArchive();
+        result = result * PRIME + ($archive == null ? 43 : $archive.hashCode());
+        final Object $homePath = this.getHomePath();
+        result = result * PRIME + ($homePath == null ? 43 : $homePath.hashCode());
+        final Object $type = this.getType();
+        result = result * PRIME + ($type == null ? 43 : $type.hashCode());
+        final Object $version = this.getVersion();
+        result = result * PRIME + ($version == null ? 43 : $version.hashCode());
+        return result;
+    }
+
+    public String toString() {
+        return "ArchivedJavaInstallation(archive=" + this.getArchive() + ", homePath=" + this.getHomePath() + ", type=" + this.getType() + ", version=" + this.getVersion() + ")";
+    }
+}
@@ -0,0 +1,292 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the installations found by a {@link JavaFinder} in memory and answers queries on a loopback socket, so that
+ * repeated queries don't have to start a JVM that searches the whole system again. The installations are kept up to
+ * date by a {@link LiveInstallationRegistry} and a periodic full search.
+ * <p>
+ * The protocol is line based: a client sends one command, the daemon answers with any number of lines and closes the
+ * connection. Failures are answered with a single line starting with {@value #ERROR_PREFIX}. Supported commands:
+ * <ul>
+ *     <li>{@code list} - all installations, newest first</li>
+ *     <li>{@code best <major>[-<major>] [jdk|jre]} - the best installation of the given major version or range, see
+ *     {@link JavaInstallationIndex}</li>
+ *     <li>{@code rescan} - searches all directories again</li>
+ * </ul>
+ * The socket is only bound to the loopback interface, but connections aren't authenticated: every local user can
+ * list the installations and trigger rescans. To limit what they can do with it, at most {@value #MAX_CONNECTIONS}
+ * connections are handled at the same time, and concurrent rescans are merged into one.
+ */
+class Daemon implements Closeable {
+
+    static final int DEFAULT_PORT = 47017;
+    static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(10);
+    static final String ERROR_PREFIX = "ERROR ";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+    // Rescanning might take a while
+    private static final int CLIENT_READ_TIMEOUT_MILLIS = 5 * 60_000;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+    static final int MAX_CONNECTIONS = 8;
+
+    private final @NotNull ServerSocket serverSocket;
+    private final @NotNull LiveInstallationRegistry registry;
+    private final @NotNull ScheduledExecutorService refresher;
+    // No queue, so connections beyond the limit are rejected right away instead of piling up
+    private final @NotNull ExecutorService connections = new ThreadPoolExecutor(MAX_CONNECTIONS, MAX_CONNECTIONS, 0, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "JavaFinder-daemon-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final @NotNull Object rescanLock = new Object();
+    private @Nullable CompletableFuture<Void> runningRescan;
+
+    private Daemon(@NotNull ServerSocket serverSocket, @NotNull LiveInstallationRegistry registry, @NotNull Duration refreshInterval) {
+        this.serverSocket = serverSocket;
+        this.registry = registry;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "JavaFinder-daemon-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(registry::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Binds the socket and performs the initial search. The socket is bound first, so that a second daemon on the
+     * same port fails immediately.
+     *
+     * @throws IOException if the port is already in use or the search directories can't be watched
+     */
+    static @NotNull Daemon start(@NotNull JavaFinder finder, int port, @NotNull Duration refreshInterval) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        try {
+            return new Daemon(serverSocket, LiveInstallationRegistry.start(finder), refreshInterval);
+        } catch (IOException | RuntimeException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Answers queries until the daemon is closed. Connections are handled on a pool of {@value #MAX_CONNECTIONS}
+     * threads, so a rescan doesn't block other queries. Further connections are answered with an error right away. If accepting a connection fails, e.g. because the process ran out of file descriptors, the
+     * daemon waits a little before trying again.
+     */
+    void serve() {
+        long backoffMillis = 0;
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+                backoffMillis = 0;
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(10, backoffMillis * 2));
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            try {
+                connections.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                reject(socket);
+            }
+        }
+    }
+
+    private static void reject(@NotNull Socket socket) {
+        try (Socket connection = socket) {
+            connection.getOutputStream().write((ERROR_PREFIX + "Too many connections\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
+            // The client went away
+        }
+    }
+
+    private void handle(@NotNull Socket socket) {
+        try (Socket connection = socket) {
+            connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(new BufferedOutputStream(connection.getOutputStream()), false, StandardCharsets.UTF_8.name());
+            String command = reader.readLine();
+            execute(command == null ? "" : command, out);
+            out.flush();
+        } catch (IOException ignored) {
+            // The client went away
+        }
+    }
+
+    /**
+     * Executes a single command and writes the answer to the given stream
+     */
+    void execute(@NotNull String command, @NotNull PrintStream out) {
+        String[] arguments = command.trim().split("\\s+");
+        switch (arguments[0].toLowerCase(Locale.ROOT)) {
+            case "list":
+                for (JavaInstallation installation : registry.getInstallations()) {
+                    Main.print(out, installation);
+                }
+                break;
+            case "best":
+                best(arguments, out);
+                break;
+            case "rescan":
+                rescan();
+                out.println("Found " + registry.getInstallations().size() + " installations");
+                break;
+            default:
+                out.println(ERROR_PREFIX + "Unknown command \"" + command.trim() + "\". Commands: list, best <major>[-<major>] [jdk|jre], rescan");
+        }
+    }
+
+    /**
+     * Searches all directories again. If a rescan is already running, waits for that one instead of starting another.
+     */
+    private void rescan() {
+        CompletableFuture<Void> rescan;
+        boolean started = false;
+        synchronized (rescanLock) {
+            if (runningRescan == null) {
+                runningRescan = new CompletableFuture<>();
+                started = true;
+            }
+            rescan = runningRescan;
+        }
+        if (started) {
+            try {
+                registry.refresh();
+                rescan.complete(null);
+            } catch (RuntimeException | Error e) {
+                rescan.completeExceptionally(e);
+            } finally {
+                synchronized (rescanLock) {
+                    runningRescan = null;
+                }
+            }
+        }
+        try {
+            rescan.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private void best(@NotNull String[] arguments, @NotNull PrintStream out) {
+        if (arguments.length < 2 || arguments.length > 3) {
+            out.println(ERROR_PREFIX + "Usage: best <major>[-<major>] [jdk|jre]");
+            return;
+        }
+        int minMajor;
+        int maxMajor;
+        JavaType type = null;
+        try {
+            int separator = arguments[1].indexOf('-');
+            minMajor = Integer.parseInt(separator < 0 ? arguments[1] : arguments[1].substring(0, separator));
+            maxMajor = separator < 0 ? minMajor : Integer.parseInt(arguments[1].substring(separator + 1));
+            if (arguments.length == 3) {
+                type = JavaType.valueOf(arguments[2].toUpperCase(Locale.ROOT));
+            }
+        } catch (IllegalArgumentException e) {
+            out.println(ERROR_PREFIX + "Usage: best <major>[-<major>] [jdk|jre]");
+            return;
+        }
+
+        JavaInstallationIndex index = registry.getIndex();
+        Optional<JavaInstallation> best = type == null ? index.findBest(minMajor, maxMajor) : index.findBest(minMajor, maxMajor, type);
+        if (best.isPresent()) {
+            Main.print(out, best.get());
+            return;
+        }
+        out.println(ERROR_PREFIX + "No matching installation found");
+    }
+
+    /**
+     * Sends a command to a running daemon and copies its answer to the given stream.
+     *
+     * @return false if the daemon answered with an error
+     * @throws ConnectException if no daemon is running on the given port
+     */
+    static boolean query(int port, @NotNull String command, @NotNull PrintStream out) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(CLIENT_READ_TIMEOUT_MILLIS);
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(command + "\n");
+            writer.flush();
+            socket.shutdownOutput();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            boolean success = true;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                out.println(line);
+                if (line.startsWith(ERROR_PREFIX)) {
+                    success = false;
+                }
+            }
+            return success;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        refresher.shutdownNow();
+        connections.shutdownNow();
+        try {
+            serverSocket.close();
+        } finally {
+            registry.close();
+        }
+    }
+}
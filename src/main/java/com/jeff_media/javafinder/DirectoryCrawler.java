@@ -22,50 +22,429 @@ package com.jeff_media.javafinder;
  * #L%
  */
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Searches a directory tree for Java installations. The tree is walked iteratively using an explicit stack of open
+ * {@link DirectoryStream}s, so memory usage is proportional to the depth of the tree instead of its width, and the
+ * attributes of every entry are read exactly once.
+ * <p>
+ * Once a directory has been identified as a Java home, only its nested runtimes (see {@link JavaHomeLayout#NESTED_RUNTIMES})
+ * are searched, so the cost of a search is proportional to the number of installations instead of their file counts.
+ * <p>
+ * Every directory is searched at most once per search, even if it can be reached through several symlinks. This also
+ * stops symlink cycles. Directories that have already been searched are only checked for being a Java home, so the
+ * path is still reported as an alias of the installation.
+ * <p>
+ * Remote and FUSE file systems mounted inside of the tree are skipped or left for later, depending on the
+ * {@link SlowFileSystemPolicy}. If a {@link ScanContext#getRootTimeout(boolean) root timeout} applies, the crawl is
+ * abandoned once it has passed.
+ * <p>
+ * The {@link ScanContext#getMaxDepth() depth} and {@link ScanContext#getMaxDirectoriesPerRoot() number of listed
+ * directories} are limited while walking the tree, so no directory beyond them is ever listed. Such a bounded crawl
+ * only skips directories that it has searched itself, because another search directory may have stopped before
+ * searching them completely.
+ */
 class DirectoryCrawler {
 
     private final File searchDir;
-    private final List<JavaInstallation> installations = new ArrayList<>();
     private final String javaExecutableName;
     private final String javacExecutableName;
+    private final ScanContext context;
+    private final boolean slowFileSystem;
+    private final int rootDepth;
+    private final @Nullable Set<Object> visitedDirectories;
+    private final AtomicInteger listedDirectories = new AtomicInteger();
+    private volatile boolean abandoned = false;
+
+    DirectoryCrawler(File searchDir, OperatingSystem os, ScanContext context) {
+        this(searchDir, os, context, false);
+    }
 
-    DirectoryCrawler(File searchDir, OperatingSystem os) {
+    /**
+     * @param slowFileSystem whether the search directory is on a remote or FUSE file system, which gets a
+     *                       {@link ScanContext#getRootTimeout(boolean) timeout} by default
+     */
+    DirectoryCrawler(File searchDir, OperatingSystem os, ScanContext context, boolean slowFileSystem) {
+        this(searchDir, os, context, slowFileSystem, 0);
+    }
+
+    /**
+     * @param rootDepth depth of the directory to crawl below the search directory it belongs to, so that the
+     *                  {@link ScanContext#getMaxDepth() maximum depth} still applies when only a subtree is crawled
+     */
+    DirectoryCrawler(File searchDir, OperatingSystem os, ScanContext context, boolean slowFileSystem, int rootDepth) {
         this.searchDir = searchDir;
+        this.context = context;
+        this.slowFileSystem = slowFileSystem;
+        this.rootDepth = rootDepth;
+        this.visitedDirectories = context.isBoundedCrawl() ? ConcurrentHashMap.newKeySet() : null;
         this.javaExecutableName = os.getJavaExecutableName();
         this.javacExecutableName = os.getJavacExecutableName();
     }
 
-    List<JavaInstallation> findInstallations() {
-        findInstallations(searchDir);
-        return installations;
-    }
-
-    private void findInstallations(File searchDir) {
-        File[] children = searchDir.listFiles();
-        if (children != null) {
-            for (File file : children) {
-                if (file.isDirectory()) {
-                    if (file.getName().equals("bin")) {
-                        File javaExecutable = new File(file, javaExecutableName);
-                        File javaCExecutable = new File(file, javacExecutableName);
-                        boolean isJdk = javaCExecutable.canExecute();
-                        if (javaExecutable.canExecute()) {
-                            //System.out.println("Found " + (isJdk ? "JDK" : "JRE") + " at " + searchDir.getAbsolutePath());
-                            try {
-                                installations.add(new JavaInstallation(searchDir, javaExecutable, isJdk ? javaCExecutable : null, isJdk ? JavaType.JDK : JavaType.JRE));
-                            } catch (IOException ignored) {
-                                ignored.printStackTrace();
-                            }
-                        }
-                    } else {
-                        findInstallations(file);
+    /**
+     * Searches the directory tree on the calling thread, or on the {@link ScanContext#getCrawlExecutor() crawl executor}
+     * if the crawl is parallel or has a timeout. Found installations are added to the {@link ScanContext}, which
+     * probes them asynchronously.
+     */
+    void crawl() {
+        if (context.isParallelCrawl() || context.getRootTimeout(slowFileSystem) != null) {
+            crawlAsync().join();
+            return;
+        }
+        walkRoot();
+    }
+
+    /**
+     * Searches the directory tree on the calling thread, without a timeout
+     */
+    private void walkRoot() {
+        long start = System.nanoTime();
+        Path root = visitDirectory(searchDir.toPath());
+        if (root != null) {
+            walk(root);
+        }
+        rootFinished(start);
+    }
+
+    /**
+     * Only checks whether the search directory and its nested runtimes are Java homes, without listing any directory.
+     * Used for the candidate homes reported by a {@link DiscoverySource}.
+     */
+    void checkHome() {
+        Path home = visitDirectory(searchDir.toPath());
+        if (home == null || addIfJavaHome(home) == null) {
+            return;
+        }
+        for (Path nestedRuntime : JavaHomeLayout.resolveNestedRuntimes(home)) {
+            Path directory = visitDirectory(nestedRuntime);
+            if (directory != null) {
+                addIfJavaHome(directory);
+            }
+        }
+    }
+
+    /**
+     * Searches the directory tree on the {@link ScanContext#getCrawlExecutor() crawl executor} without blocking the
+     * calling thread.
+     */
+    @NotNull CompletableFuture<Void> crawlAsync() {
+        CompletableFuture<Void> crawled;
+        if (!context.isParallelCrawl()) {
+            crawled = CompletableFuture.runAsync(this::walkRoot, context.getCrawlExecutor());
+        } else {
+            long start = System.nanoTime();
+            ParallelCrawl crawl = new ParallelCrawl();
+            CompletableFuture.runAsync(() -> {
+                Path root = visitDirectory(searchDir.toPath());
+                if (root != null) {
+                    crawl.submit(root, rootDepth, false);
+                }
+            }, context.getCrawlExecutor()).whenComplete(crawl::rootFinished);
+            crawled = crawl.done.whenComplete((Void, error) -> rootFinished(start));
+        }
+
+        Duration timeout = context.getRootTimeout(slowFileSystem);
+        if (timeout == null) {
+            return crawled;
+        }
+        // A thread that is stuck listing a directory can't be interrupted, so the crawl is only abandoned
+        return ScanContext.completeOnTimeout(crawled, timeout.toNanos(), () -> {
+            abandon(true);
+            return null;
+        });
+    }
+
+    private void abandon(boolean timedOut) {
+        abandoned = true;
+        context.abandonRoot(searchDir, timedOut);
+    }
+
+    private void rootFinished(long start) {
+        context.getStatistics().recordRoot(searchDir, System.nanoTime() - start);
+        if (!abandoned) {
+            context.onRootFinished(searchDir);
+        }
+    }
+
+    private boolean isStopped() {
+        return abandoned || context.isCancelled();
+    }
+
+    private void walk(Path root) {
+        // The depth of the directory on top of the stack is the root depth plus the size of the stack minus one
+        Deque<OpenDirectory> stack = new ArrayDeque<>();
+        OpenDirectory rootDirectory = enter(root, rootDepth, false);
+        if (rootDirectory == null) {
+            return;
+        }
+        stack.push(rootDirectory);
+        try {
+            while (!stack.isEmpty() && !isStopped()) {
+                OpenDirectory current = stack.peek();
+                Path entry = current.next();
+                if (entry == null) {
+                    stack.pop().close();
+                    continue;
+                }
+                Path subdirectory = visit(entry, current.insideJavaHome);
+                if (subdirectory != null) {
+                    OpenDirectory child = enter(subdirectory, rootDepth + stack.size(), current.insideJavaHome);
+                    if (child != null) {
+                        stack.push(child);
+                    }
+                }
+            }
+        } finally {
+            while (!stack.isEmpty()) {
+                stack.pop().close();
+            }
+        }
+    }
+
+    /**
+     * Called once for every directory that gets searched. If it's a Java home, it's added as Java installation and
+     * only its nested runtimes will be searched. Otherwise, all its entries except bin directories will be searched.
+     * Nothing below the maximum depth is searched.
+     *
+     * @param insideJavaHome whether one of the directory's ancestors is a Java home
+     */
+    private @Nullable OpenDirectory enter(@NotNull Path directory, int depth, boolean insideJavaHome) {
+        Path javaExecutable = addIfJavaHome(directory);
+        if (depth >= context.getMaxDepth()) {
+            return null;
+        }
+
+        if (javaExecutable == null) {
+            return list(directory, insideJavaHome);
+        }
+
+        // Directories like /usr contain a bin/java that is only a link to the real installation, so they aren't pruned
+        context.getStatistics().recordStatCalls(1);
+        if (Files.isSymbolicLink(javaExecutable)) {
+            return list(directory, true);
+        }
+
+        return new OpenDirectory(directory, JavaHomeLayout.resolveNestedRuntimes(directory).iterator(), null, true);
+    }
+
+    /**
+     * Adds the given directory as Java installation if it contains an executable bin/java, unless it doesn't match the
+     * {@link JavaFinderBuilder#includePaths(String...) included paths}. Returns that executable, or null if the
+     * directory isn't a Java home.
+     */
+    private @Nullable Path addIfJavaHome(@NotNull Path directory) {
+        Path bin = directory.resolve(JavaHomeLayout.BIN);
+        Path javaExecutable = bin.resolve(javaExecutableName);
+        context.getStatistics().recordStatCalls(1);
+        if (!Files.isExecutable(javaExecutable)) {
+            return null;
+        }
+
+        if (!context.isIncludedHome(directory)) {
+            return javaExecutable;
+        }
+
+        Path javacExecutable = bin.resolve(javacExecutableName);
+        context.getStatistics().recordStatCalls(2);
+        boolean isJdk = Files.isExecutable(javacExecutable);
+        context.addInstallation(directory.toFile(), javaExecutable.toFile(), isJdk ? javacExecutable.toFile() : null, isJdk ? JavaType.JDK : JavaType.JRE);
+        return javaExecutable;
+    }
+
+    private @Nullable OpenDirectory list(@NotNull Path directory, boolean insideJavaHome) {
+        if (listedDirectories.incrementAndGet() > context.getMaxDirectoriesPerRoot()) {
+            abandon(false);
+            return null;
+        }
+        OpenDirectory openDirectory = OpenDirectory.open(directory, insideJavaHome);
+        if (openDirectory != null) {
+            context.onDirectoryListed(directory);
+        }
+        return openDirectory;
+    }
+
+    /**
+     * Checks a single directory entry. Returns the entry if it's a directory that has to be searched, otherwise null.
+     * Directories that have already been searched through another path are only checked for being a Java home.
+     *
+     * @param insideJavaHome whether the entry is located below a Java home
+     */
+    private @Nullable Path visit(@NotNull Path entry, boolean insideJavaHome) {
+        Path fileName = entry.getFileName();
+        if (fileName == null) {
+            return null;
+        }
+        String name = fileName.toString();
+        if (JavaHomeLayout.isBinDirectory(name) || context.isExcludedDirectoryName(name)
+                || (insideJavaHome && JavaHomeLayout.JAVA_HOME_CONTENT_NAMES.contains(name))
+                || context.isExcludedPath(entry) || context.skipMountPoint(entry)) {
+            return null;
+        }
+        return visitDirectory(entry);
+    }
+
+    /**
+     * Returns the given path if it's a directory that hasn't been searched yet. Also used for the search directory
+     * itself, which isn't subject to the name checks of {@link #visit(Path, boolean)}.
+     */
+    private @Nullable Path visitDirectory(@NotNull Path entry) {
+        BasicFileAttributes attributes;
+        context.getStatistics().recordStatCalls(1);
+        try {
+            attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isDirectory()) {
+            return null;
+        }
+        Object directoryKey = directoryKey(entry, attributes);
+        if (visitedDirectories != null ? !visitedDirectories.add(directoryKey) : !context.markVisited(directoryKey)) {
+            addIfJavaHome(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns an object that identifies the directory regardless of the path it has been reached through. This is the
+     * file key (device and inode) if the file system provides one, otherwise the real path.
+     */
+    private @NotNull Object directoryKey(@NotNull Path directory, @NotNull BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        if (fileKey != null) {
+            return fileKey;
+        }
+        try {
+            return directory.toRealPath();
+        } catch (IOException e) {
+            return directory.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * A directory whose entries are currently being streamed
+     */
+    private static class OpenDirectory {
+
+        private final Path path;
+        private final Iterator<Path> iterator;
+        private final @Nullable DirectoryStream<Path> stream;
+        // Whether this directory or one of its ancestors is a Java home
+        private final boolean insideJavaHome;
+
+        private OpenDirectory(Path path, Iterator<Path> iterator, @Nullable DirectoryStream<Path> stream, boolean insideJavaHome) {
+            this.path = path;
+            this.iterator = iterator;
+            this.stream = stream;
+            this.insideJavaHome = insideJavaHome;
+        }
+
+        private static @Nullable OpenDirectory open(Path path, boolean insideJavaHome) {
+            try {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+                return new OpenDirectory(path, stream.iterator(), stream, insideJavaHome);
+            } catch (IOException | SecurityException e) {
+                return null;
+            }
+        }
+
+        private @Nullable Path next() {
+            try {
+                return iterator.hasNext() ? iterator.next() : null;
+            } catch (DirectoryIteratorException e) {
+                return null;
+            }
+        }
+
+        private void close() {
+            if (stream == null) {
+                return;
+            }
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+
+    /**
+     * Searches every directory as its own task on the crawl executor, so idle threads can pick up subdirectories of
+     * large directories. Completes once no more tasks are pending.
+     */
+    private class ParallelCrawl {
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        // Includes the task that visits the root, so this can't reach 0 before the root has been submitted
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private void submit(@NotNull Path directory, int depth, boolean insideJavaHome) {
+            pending.incrementAndGet();
+            try {
+                context.getCrawlExecutor().execute(() -> {
+                    try {
+                        crawl(directory, depth, insideJavaHome);
+                    } catch (Throwable t) {
+                        done.completeExceptionally(t);
+                    } finally {
+                        taskFinished();
+                    }
+                });
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                taskFinished();
+            }
+        }
+
+        private void rootFinished(Void result, Throwable error) {
+            if (error != null) {
+                done.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+            taskFinished();
+        }
+
+        private void taskFinished() {
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+
+        private void crawl(@NotNull Path directory, int depth, boolean insideJavaHome) {
+            if (isStopped() || done.isDone()) {
+                return;
+            }
+            OpenDirectory openDirectory = enter(directory, depth, insideJavaHome);
+            if (openDirectory == null) {
+                return;
+            }
+            try {
+                Path entry;
+                while (!isStopped() && (entry = openDirectory.next()) != null) {
+                    Path subdirectory = visit(entry, openDirectory.insideJavaHome);
+                    if (subdirectory != null) {
+                        submit(subdirectory, depth + 1, openDirectory.insideJavaHome);
                     }
                 }
+            } finally {
+                openDirectory.close();
             }
         }
     }
@@ -0,0 +1,60 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.Predicate;
+
+/**
+ * Finds candidate Java homes without walking directory trees, e.g. by reading metadata that the operating system
+ * already keeps. The candidates are checked like the homes found by a {@link DirectoryCrawler}, so they don't have to
+ * be exact: non-existing directories and directories that aren't Java homes are ignored.
+ */
+interface DiscoverySource {
+
+    /**
+     * Returns candidate Java home directories. Must not throw, but return whatever could be found. Directories on
+     * remote or FUSE file systems must not be accessed, since they might not respond. Candidates in there are reported
+     * as they are, and checked according to the {@link SlowFileSystemPolicy}.
+     *
+     * @param isOnSlowFileSystem tells whether a directory is on a remote or FUSE file system, without blocking
+     * @return candidate Java homes
+     */
+    @NotNull Collection<File> findHomes(@NotNull Predicate<File> isOnSlowFileSystem);
+
+    /**
+     * Returns search directories whose installations are all among the given homes, so they don't have to be crawled.
+     * Only called if {@link #findHomes(Predicate)} returned at least one home.
+     *
+     * @param homes the homes that {@link #findHomes(Predicate)} just returned
+     * @return directories that don't have to be crawled
+     */
+    default @NotNull Collection<File> getCoveredDirectories(@NotNull Collection<File> homes) {
+        return Collections.emptyList();
+    }
+}
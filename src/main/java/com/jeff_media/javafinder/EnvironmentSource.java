@@ -0,0 +1,93 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Finds the Java installations that the environment points to: {@code JAVA_HOME}, {@code JDK_HOME}, every java
+ * executable on the {@code PATH}, and the currently running Java installation. Executables are resolved through
+ * symlinks to their real homes, so e.g. /usr/bin/java reports the installation selected by update-alternatives.
+ */
+class EnvironmentSource implements DiscoverySource {
+
+    private static final List<String> HOME_VARIABLES = Collections.unmodifiableList(Arrays.asList("JAVA_HOME", "JDK_HOME"));
+    private static final String PATH_VARIABLE = "PATH";
+
+    private final @NotNull String javaExecutableName;
+
+    EnvironmentSource(@NotNull OperatingSystem os) {
+        this.javaExecutableName = os.getJavaExecutableName();
+    }
+
+    @Override
+    public @NotNull Collection<File> findHomes(@NotNull Predicate<File> isOnSlowFileSystem) {
+        Set<File> homes = new LinkedHashSet<>();
+        for (String variable : HOME_VARIABLES) {
+            addHome(System.getenv(variable), homes);
+        }
+        addHome(System.getProperty("java.home"), homes);
+
+        String path = System.getenv(PATH_VARIABLE);
+        if (path != null) {
+            for (String entry : path.split(File.pathSeparator)) {
+                // Windows allows quoted entries
+                entry = entry.trim().replace("\"", "");
+                if (entry.isEmpty()) continue;
+                File javaExecutable = new File(entry, javaExecutableName);
+                if (isOnSlowFileSystem.test(javaExecutable.getParentFile())) {
+                    // Resolving the link would access the file system
+                    JavaHomeLayout.addHomeOfExecutable(javaExecutable, homes);
+                    continue;
+                }
+                if (!javaExecutable.isFile()) continue;
+                try {
+                    JavaHomeLayout.addHomeOfExecutable(javaExecutable.toPath().toRealPath().toFile(), homes);
+                } catch (IOException | InvalidPathException | SecurityException ignored) {
+
+                }
+            }
+        }
+        return homes;
+    }
+
+    private static void addHome(@Nullable String home, @NotNull Set<File> homes) {
+        if (home == null || home.trim().isEmpty()) {
+            return;
+        }
+        File file = new File(home.trim());
+        homes.add(file);
+        File outerHome = JavaHomeLayout.getOuterHome(file);
+        if (outerHome != null) {
+            homes.add(outerHome);
+        }
+    }
+}
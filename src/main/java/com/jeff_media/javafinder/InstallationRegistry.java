@@ -0,0 +1,295 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent registry of already probed Java installations, shared by all processes on the same host. The registry is
+ * a compact binary file that is read in one go. Entries are keyed by the java executable's path and are only
+ * considered valid as long as the executable's size, modification time and file key haven't changed.
+ * <p>
+ * Writers never modify the file in place: they take an exclusive lock on a sibling {@code .lock} file, merge their new
+ * entries with the current file contents, write everything to a temporary file and atomically move it over the old
+ * registry. Readers therefore always see either the old or the new file, never a partially written one. The file is
+ * never memory-mapped, because Windows refuses to replace a file that is still mapped.
+ */
+class InstallationRegistry {
+
+    private static final int MAGIC = 0x4A465247; // "JFRG"
+    private static final int FORMAT_VERSION = 2;
+
+    private final @NotNull File file;
+    private final @NotNull Map<String, Entry> entries;
+    private final @NotNull Map<String, Entry> pending = new ConcurrentHashMap<>();
+
+    private InstallationRegistry(@NotNull File file, @NotNull Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens the registry stored in the given file. A missing, unreadable or corrupt file results in an empty registry.
+     */
+    static @NotNull InstallationRegistry open(@NotNull File file) {
+        return new InstallationRegistry(file, new ConcurrentHashMap<>(read(file)));
+    }
+
+    /**
+     * Returns the cached version of the given java executable, or null if there is no entry or the entry is outdated.
+     */
+    @Nullable JavaVersion lookup(@NotNull File javaExecutable, @NotNull BasicFileAttributes attributes) {
+        Entry entry = entries.get(javaExecutable.getAbsolutePath());
+        if (entry == null || !entry.matches(attributes)) {
+            return null;
+        }
+        return entry.version;
+    }
+
+    /**
+     * Remembers a freshly probed installation. It will be written on the next call to {@link #save()}.
+     */
+    void record(@NotNull JavaInstallation installation, @NotNull BasicFileAttributes attributes) {
+        String path = installation.getJavaExecutable().getAbsolutePath();
+        pending.put(path, new Entry(path,
+                attributes.size(),
+                attributes.lastModifiedTime().toMillis(),
+                fileKeyOf(attributes),
+                installation.getHomeDirectory().getAbsolutePath(),
+                installation.getJavacExecutable() == null ? null : installation.getJavacExecutable().getAbsolutePath(),
+                installation.getType(),
+                installation.getVersion()));
+    }
+
+    /**
+     * Writes all recorded entries to disk, merged with whatever other processes have written in the meantime.
+     * Synchronized since file locks are held by the whole JVM, and installations might be recorded while saving.
+     */
+    synchronized void save() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Entry> saved = new HashMap<>(pending);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory.getAbsolutePath());
+        }
+        File lockFile = new File(file.getAbsolutePath() + ".lock");
+        try (FileChannel lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.lock();
+            try {
+                Map<String, Entry> merged = read(file);
+                merged.putAll(saved);
+                File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+                try {
+                    write(tempFile, merged.values());
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tempFile.toPath());
+                }
+            } finally {
+                lock.release();
+            }
+            entries.putAll(saved);
+            saved.forEach(pending::remove);
+        }
+    }
+
+    private static @NotNull Map<String, Entry> read(@NotNull File file) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return entries;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until the buffer is full, or the file has been truncated in the meantime
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return entries;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = Entry.read(buffer);
+                entries.put(entry.executable, entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Corrupt or unreadable registry - start from scratch, it will be overwritten on the next save
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static void write(@NotNull File file, @NotNull Collection<Entry> entries) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                entry.write(out);
+            }
+        }
+    }
+
+    private static @NotNull String fileKeyOf(@NotNull BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    private static void writeString(@NotNull DataOutputStream out, @Nullable String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @Nullable String readString(@NotNull ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+
+        private final @NotNull String executable;
+        private final long size;
+        private final long lastModified;
+        private final @NotNull String fileKey;
+        private final @NotNull String homeDirectory;
+        private final @Nullable String javacExecutable;
+        private final @NotNull JavaType type;
+        private final @NotNull JavaVersion version;
+
+        private Entry(@NotNull String executable,
+                      long size,
+                      long lastModified,
+                      @NotNull String fileKey,
+                      @NotNull String homeDirectory,
+                      @Nullable String javacExecutable,
+                      @NotNull JavaType type,
+                      @NotNull JavaVersion version) {
+            this.executable = executable;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.homeDirectory = homeDirectory;
+            this.javacExecutable = javacExecutable;
+            this.type = type;
+            this.version = version;
+        }
+
+        private boolean matches(@NotNull BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && fileKey.equals(fileKeyOf(attributes));
+        }
+
+        private void write(@NotNull DataOutputStream out) throws IOException {
+            writeString(out, executable);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            writeString(out, fileKey);
+            writeString(out, homeDirectory);
+            writeString(out, javacExecutable);
+            out.writeByte(type.ordinal());
+            out.writeInt(version.getMajor());
+            out.writeInt(version.getMinor());
+            out.writeInt(version.getSecurityNumber());
+            out.writeInt(version.getBuild());
+            writeString(out, version.getPreRelease());
+            writeString(out, version.getShortVersion());
+            writeString(out, version.getFullVersion());
+            writeString(out, version.getImplementor());
+            writeString(out, version.getArchitecture());
+            List<String> output = version.getJavaVersionOutput();
+            out.writeInt(output.size());
+            for (String line : output) {
+                writeString(out, line);
+            }
+        }
+
+        private static @NotNull Entry read(@NotNull ByteBuffer buffer) {
+            String executable = Objects.requireNonNull(readString(buffer));
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            String fileKey = Objects.requireNonNull(readString(buffer));
+            String homeDirectory = Objects.requireNonNull(readString(buffer));
+            String javacExecutable = readString(buffer);
+            int typeOrdinal = buffer.get();
+            if (typeOrdinal < 0 || typeOrdinal >= JavaType.values().length) {
+                throw new IllegalArgumentException("Invalid type " + typeOrdinal);
+            }
+            JavaType type = JavaType.values()[typeOrdinal];
+            int major = buffer.getInt();
+            int minor = buffer.getInt();
+            int security = buffer.getInt();
+            int build = buffer.getInt();
+            String preRelease = readString(buffer);
+            String shortVersion = Objects.requireNonNull(readString(buffer));
+            String fullVersion = Objects.requireNonNull(readString(buffer));
+            String implementor = readString(buffer);
+            String architecture = readString(buffer);
+            int outputLines = buffer.getInt();
+            if (outputLines < 0 || outputLines > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid output line count " + outputLines);
+            }
+            List<String> output = new ArrayList<>(outputLines);
+            for (int i = 0; i < outputLines; i++) {
+                output.add(readString(buffer));
+            }
+            JavaVersion version = new JavaVersion(major, minor, security, build, preRelease, Collections.unmodifiableList(output),
+                    shortVersion, fullVersion, implementor, architecture);
+            return new Entry(executable, size, lastModified, fileKey, homeDirectory, javacExecutable, type, version);
+        }
+    }
+}
@@ -26,9 +26,15 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -37,23 +43,138 @@ import java.util.stream.Collectors;
  */
 public class JavaFinder {
 
-    private final Set<File> searchDirectories = new HashSet<>();
+    private final SearchRoots searchRoots;
+    private final Set<File> searchDirectories;
+    private final List<DiscoverySource> discoverySources = new ArrayList<>();
+    private final boolean checkDefaultLocations;
+    private final VersionDetectionMode versionDetectionMode;
+    private final File registryFile;
+    private final ProbeExecutor probeExecutor;
+    private final Executor crawlExecutor;
+    private final Consumer<ProbeResult> probeListener;
+    private final boolean parallelCrawl;
+    private final boolean prefetchVersions;
+    private final Set<String> excludedDirectoryNames;
+    private final Consumer<ScanStatistics> statisticsListener;
+    private final Duration scanBudget;
+    private final SlowFileSystemPolicy slowFileSystemPolicy;
+    private final Duration rootTimeout;
+    private final int maxDepth;
+    private final int maxDirectoriesPerRoot;
+    private final PathGlobs includedPaths;
+    private final PathGlobs excludedPaths;
 
-    JavaFinder(Collection<File> searchDirectories) {
-        this.searchDirectories.addAll(searchDirectories);
+    JavaFinder(Collection<File> searchDirectories, JavaFinderBuilder builder) {
+        this.maxDepth = builder.getMaxDepth();
+        this.maxDirectoriesPerRoot = builder.getMaxDirectoriesPerRoot();
+        // A crawl that stops early may not reach the search directories inside of it, so they're kept then
+        boolean boundedCrawl = maxDepth != Integer.MAX_VALUE || maxDirectoriesPerRoot != Integer.MAX_VALUE;
+        this.searchRoots = SearchRoots.of(searchDirectories, boundedCrawl);
+        this.searchDirectories = Collections.unmodifiableSet(searchRoots.getDirectories());
+        this.versionDetectionMode = builder.getVersionDetectionMode();
+        this.registryFile = builder.getRegistryFile();
+        this.probeExecutor = new ProbeExecutor(builder.getMaxConcurrentProbes(), builder.getProbeTimeout(), builder.isRetainVersionOutput(), builder.getProbeExecutor());
+        this.crawlExecutor = builder.getCrawlExecutor();
+        this.checkDefaultLocations = builder.isCheckDefaultLocations();
+        discoverySources.add(new EnvironmentSource(OperatingSystem.CURRENT));
+        if (builder.isUsePackageMetadata() && OperatingSystem.CURRENT == OperatingSystem.LINUX) {
+            discoverySources.add(new PackageMetadataSource());
+        }
+        this.probeListener = builder.getProbeListener();
+        this.parallelCrawl = builder.isParallelCrawl();
+        this.prefetchVersions = builder.isPrefetchVersions();
+        this.excludedDirectoryNames = Collections.unmodifiableSet(new HashSet<>(builder.getExcludedDirectoryNames()));
+        this.statisticsListener = builder.getStatisticsListener();
+        this.scanBudget = builder.getScanBudget();
+        this.slowFileSystemPolicy = builder.getSlowFileSystemPolicy();
+        this.rootTimeout = builder.getRootTimeout();
+        this.includedPaths = PathGlobs.of(builder.getIncludedPaths());
+        this.excludedPaths = PathGlobs.of(builder.getExcludedPaths());
+    }
 
-        // Remove non-existing directories
-        searchDirectories.removeIf(file -> file == null || !file.isDirectory());
+    /**
+     * Returns the canonical search directories. Directories that don't exist or that are inside of another search
+     * directory have been removed.
+     */
+    Set<File> getSearchDirectories() {
+        return searchDirectories;
+    }
 
-        // Remove subdirectories of already added locations
-        Collection<File> locationsCopy = Collections.unmodifiableCollection(searchDirectories);
-        searchDirectories.removeIf(file -> {
-            for (File other : locationsCopy) {
-                if (other.equals(file)) continue;
-                if (file.getAbsolutePath().startsWith(other.getAbsolutePath() + File.separator)) return true;
-            }
-            return false;
-        });
+    VersionDetectionMode getVersionDetectionMode() {
+        return versionDetectionMode;
+    }
+
+    File getRegistryFile() {
+        return registryFile;
+    }
+
+    ProbeExecutor getProbeExecutor() {
+        return probeExecutor;
+    }
+
+    Executor getCrawlExecutor() {
+        return crawlExecutor;
+    }
+
+    Consumer<ProbeResult> getProbeListener() {
+        return probeListener;
+    }
+
+    boolean isParallelCrawl() {
+        return parallelCrawl;
+    }
+
+    boolean isPrefetchVersions() {
+        return prefetchVersions;
+    }
+
+    Set<String> getExcludedDirectoryNames() {
+        return excludedDirectoryNames;
+    }
+
+    Consumer<ScanStatistics> getStatisticsListener() {
+        return statisticsListener;
+    }
+
+    Duration getScanBudget() {
+        return scanBudget;
+    }
+
+    SlowFileSystemPolicy getSlowFileSystemPolicy() {
+        return slowFileSystemPolicy;
+    }
+
+    Duration getRootTimeout() {
+        return rootTimeout;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    int getMaxDirectoriesPerRoot() {
+        return maxDirectoriesPerRoot;
+    }
+
+    PathGlobs getIncludedPaths() {
+        return includedPaths;
+    }
+
+    PathGlobs getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    /**
+     * Returns everything that determines which installations a search finds, so that searches with equal keys can
+     * share their results. Executors, listeners and the registry only change how fast they're found. The scan budget
+     * and root timeout are part of the key, so that searches without them never get a partial result. So are the probe
+     * timeout, which decides whether slow installations are found at all, and whether the version output is retained.
+     */
+    @NotNull List<Object> getScanKey() {
+        List<Class<?>> sourceTypes = discoverySources.stream().map(Object::getClass).collect(Collectors.toList());
+        return Arrays.asList(searchDirectories, checkDefaultLocations, sourceTypes, versionDetectionMode, excludedDirectoryNames, scanBudget, slowFileSystemPolicy, rootTimeout,
+                maxDepth, maxDirectoriesPerRoot, includedPaths.getPatterns(), excludedPaths.getPatterns(),
+                probeExecutor.getTimeoutMillis(), probeExecutor.isRetainOutput());
     }
 
     /**
@@ -166,37 +287,326 @@ public class JavaFinder {
 
     /**
      * Finds Java installations on the system, sorted from newest to oldest, and JDKs before JREs of the same version.
+     * Blocks until the search has finished, or until the {@link JavaFinderBuilder#scanBudget(Duration) scan budget}
+     * has run out.
      *
      * @return list of Java installations
      * @deprecated use {@link #findInstallationsAsync()} instead
      */
     @Deprecated
     public @NotNull List<JavaInstallation> findInstallations() {
-        Set<JavaInstallation> installations = new HashSet<>();
-        for (File location : searchDirectories) {
-            if (location.isDirectory()) {
-                installations.addAll(new DirectoryCrawler(location, OperatingSystem.CURRENT).findInstallations());
-            }
+        // Searches through the same pipeline as the asynchronous search, so budgets, timeouts and slow mounts are handled alike
+        try {
+            return scanAsync().join().getInstallations();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
         }
-        return installations.stream().sorted().collect(Collectors.toList());
     }
 
     /**
      * Finds Java installations on the system asynchronously, sorted from newest to oldest, and JDKs before JREs of the same version.
+     * If the {@link JavaFinderBuilder#scanBudget(Duration) scan budget} runs out, the list only contains the
+     * installations found so far - use {@link #scanAsync()} to find out whether that happened.
      *
      * @return future containing list of Java installations
      */
     public @NotNull CompletableFuture<List<JavaInstallation>> findInstallationsAsync() {
-        Set<JavaInstallation> installations = ConcurrentHashMap.newKeySet();
+        return scanAsync().thenApply(ScanResult::getInstallations);
+    }
+
+    /**
+     * Finds Java installations on the system asynchronously, like {@link #findInstallationsAsync()}. The result also
+     * tells whether the {@link JavaFinderBuilder#scanBudget(Duration) scan budget} ran out, and which search
+     * directories haven't been crawled completely in that case.
+     *
+     * @return future containing the result of the search
+     */
+    public @NotNull CompletableFuture<ScanResult> scanAsync() {
+        ScanContext context = new ScanContext(this);
+        return searchAsync(context)
+                .handle((finished, error) -> {
+                    ScanStatistics statistics = context.finish();
+                    if (error != null) {
+                        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                    }
+                    List<JavaInstallation> installations = context.getInstallations().stream().sorted().collect(Collectors.toList());
+                    boolean timedOut = !finished || !context.getTimedOutRoots().isEmpty();
+                    boolean partial = timedOut || !context.getAbandonedRoots().isEmpty();
+                    return new ScanResult(installations, partial, timedOut, finished ? context.getAbandonedRoots() : context.getUnfinishedRoots(), statistics);
+                });
+    }
+
+    /**
+     * Checks the discovered homes and crawls all search directories using the given context, within the scan budget.
+     * Completes with false if the budget has run out. Used by {@link #scanAsync()} and the
+     * {@link LiveInstallationRegistry}, so both find the same installations.
+     */
+    @NotNull CompletableFuture<Boolean> searchAsync(@NotNull ScanContext context) {
+        context.addRoots(searchDirectories);
+        return context.withinBudget(discoverAndCrawlAsync(context));
+    }
 
-        return CompletableFuture.allOf(searchDirectories
+    /**
+     * Finds Java installations on the system asynchronously without detecting their versions. Versions are only
+     * detected when {@link LazyJavaInstallation#getVersion()} is called, or in the background if
+     * {@link JavaFinderBuilder#prefetchVersions(boolean)} is enabled. Versions stored in the registry are known
+     * immediately. If the {@link JavaFinderBuilder#scanBudget(Duration) scan budget} runs out, only the installations
+     * found so far are returned.
+     *
+     * @return future containing list of lazy Java installations, sorted by their home directory
+     */
+    public @NotNull CompletableFuture<List<LazyJavaInstallation>> findLazyInstallationsAsync() {
+        Queue<LazyJavaInstallation> installations = new ConcurrentLinkedQueue<>();
+        ScanContext context = ScanContext.forLazyInstallations(this, installations::add);
+        return context.withinBudget(discoverAndCrawlAsync(context))
+                .whenComplete((finished, error) -> context.finish())
+                .thenApply(finished -> installations.stream()
+                        .sorted(Comparator.comparing(LazyJavaInstallation::getHomeDirectory))
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Finds Java installations on the system asynchronously and passes each one to the given subscriber as soon as it
+     * has been found, instead of waiting for the whole search to finish. Installations are delivered unsorted. If the
+     * {@link JavaFinderBuilder#scanBudget(Duration) scan budget} runs out, {@link JavaInstallationSubscriber#onComplete()}
+     * is called right away and no further installations are delivered.
+     *
+     * @param subscriber subscriber that receives the found installations
+     * @return future that completes after {@link JavaInstallationSubscriber#onComplete()} or
+     * {@link JavaInstallationSubscriber#onError(Throwable)} has been called
+     */
+    public @NotNull CompletableFuture<Void> findInstallationsAsync(@NotNull JavaInstallationSubscriber subscriber) {
+        Object lock = new Object();
+        AtomicBoolean done = new AtomicBoolean();
+        ScanContext context = new ScanContext(this, installation -> {
+            synchronized (lock) {
+                if (!done.get()) {
+                    subscriber.onInstallation(installation);
+                }
+            }
+        });
+        return context.withinBudget(discoverAndCrawlAsync(context)).<Void>thenApply(finished -> null).whenComplete((Void, error) -> {
+            context.finish();
+            synchronized (lock) {
+                done.set(true);
+                if (error == null) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the first Java installation matching the given predicate. The current Java installation is checked first,
+     * then the default locations, and then all other search directories. As soon as a matching installation has been
+     * found, the remaining search is cancelled.
+     * <p>
+     * Note that "first" means "first found", not "newest": use {@link #findInstallationsAsync()} if you need the best
+     * of all matching installations. If the {@link JavaFinderBuilder#scanBudget(Duration) scan budget} runs out before a
+     * matching installation has been found, the result is empty.
+     *
+     * @param predicate predicate the installation has to match, e.g. {@code java -> java.getVersion().getMajor() >= 17}
+     * @return future containing the first found matching installation, or an empty optional if there is none
+     */
+    public @NotNull CompletableFuture<Optional<JavaInstallation>> findFirstAsync(@NotNull Predicate<JavaInstallation> predicate) {
+        CompletableFuture<Optional<JavaInstallation>> result = new CompletableFuture<>();
+        ScanContext context = new ScanContext(this, installation -> {
+            if (predicate.test(installation)) {
+                result.complete(Optional.of(installation));
+            }
+        });
+        result.whenComplete((installation, error) -> context.cancel());
+
+        // Cheap and likely sources first. The current Java home is usually inside of another search directory, which
+        // then skips it because it has already been visited.
+        File currentJavaHome = SearchRoots.canonicalize(new File(System.getProperty("java.home")));
+        SearchRoots allDefaultLocations = SearchRoots.of(getDefaultJavaLocations());
+        CompletableFuture<Void> skipped = CompletableFuture.completedFuture(null);
+        context.withinBudget((searchRoots.covers(currentJavaHome) ? crawlAsync(context, Collections.singleton(currentJavaHome)) : skipped)
+                .thenCompose(Void -> result.isDone() ? CompletableFuture.completedFuture(Collections.<File>emptyList()) : discoverAsync(context))
+                .thenCompose(remainingLocations -> {
+                    List<File> defaultLocations = new ArrayList<>();
+                    List<File> otherLocations = new ArrayList<>();
+                    for (File location : remainingLocations) {
+                        if (location.equals(currentJavaHome)) continue;
+                        (allDefaultLocations.covers(location) ? defaultLocations : otherLocations).add(location);
+                    }
+                    return (result.isDone() ? skipped : crawlAsync(context, defaultLocations))
+                            .thenCompose(Void -> result.isDone() ? skipped : crawlAsync(context, otherLocations));
+                }))
+                .whenComplete((finished, error) -> {
+                    context.finish();
+                    if (error != null) {
+                        result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    } else {
+                        result.complete(Optional.empty());
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Finds Java installations using only sources that don't require crawling: {@code JAVA_HOME}, {@code JDK_HOME},
+     * the java executables on the {@code PATH}, the current Java installation and, on Linux, the installations
+     * registered by the package manager (unless disabled using {@link JavaFinderBuilder#usePackageMetadata(boolean)}).
+     * Search directories are ignored.
+     * <p>
+     * This usually only takes a few milliseconds, unless the version of an installation has to be detected by running
+     * {@code java -version}. Use {@link JavaFinderBuilder#registryFile(File)} to avoid that for repeated scans.
+     *
+     * @return list of Java installations, sorted from newest to oldest, and JDKs before JREs of the same version
+     */
+    public @NotNull List<JavaInstallation> quickScan() {
+        ScanContext context = new ScanContext(this);
+        checkDiscoveredHomesAsync(context).join();
+        context.whenProbesFinished().join();
+        context.finish();
+        return context.getInstallations().stream().sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Checks the homes reported by the discovery sources, if default locations are enabled, and completes with the
+     * search directories that still have to be crawled afterwards
+     */
+    private @NotNull CompletableFuture<Collection<File>> discoverAsync(@NotNull ScanContext context) {
+        if (!checkDefaultLocations) {
+            return CompletableFuture.completedFuture(searchDirectories);
+        }
+        return checkDiscoveredHomesAsync(context).thenApply(coveredDirectories -> {
+            List<File> remainingDirectories = new ArrayList<>(searchDirectories);
+            remainingDirectories.removeAll(coveredDirectories);
+            coveredDirectories.forEach(context::onDirectoryCovered);
+            return remainingDirectories;
+        });
+    }
+
+    /**
+     * Checks the homes reported by all discovery sources. Completes with the directories that don't have to be
+     * crawled anymore.
+     */
+    private @NotNull CompletableFuture<Set<File>> checkDiscoveredHomesAsync(@NotNull ScanContext context) {
+        Set<File> coveredDirectories = new HashSet<>();
+        return CompletableFuture.supplyAsync(() -> {
+            Set<File> homes = new LinkedHashSet<>();
+            for (DiscoverySource source : discoverySources) {
+                Collection<File> sourceHomes = source.findHomes(context::isOnKnownSlowFileSystem);
+                homes.addAll(sourceHomes);
+                if (!sourceHomes.isEmpty()) {
+                    for (File directory : source.getCoveredDirectories(sourceHomes)) {
+                        coveredDirectories.add(SearchRoots.canonicalize(directory));
+                    }
+                }
+            }
+            return homes;
+        }, crawlExecutor).thenCompose(homes -> checkHomesAsync(context, homes)).thenApply(Void -> coveredDirectories);
+    }
+
+    /**
+     * Checks the given candidate homes on the crawl executor, following the {@link SlowFileSystemPolicy} like
+     * {@link #crawlAsync(ScanContext, Collection)} does for search directories
+     */
+    private @NotNull CompletableFuture<Void> checkHomesAsync(@NotNull ScanContext context, @NotNull Collection<File> homes) {
+        List<File> slowHomes = new CopyOnWriteArrayList<>();
+        return CompletableFuture.allOf(homes
                         .stream()
-                        .filter(File::isDirectory)
-                        .map(location -> CompletableFuture.runAsync(() -> installations
-                                .addAll(new DirectoryCrawler(location, OperatingSystem.CURRENT).findInstallations())))
+                        .map(home -> checkFileSystemAsync(context, home).thenCompose(slow -> {
+                            if (slow == null || (slow && context.getSlowFileSystemPolicy() == SlowFileSystemPolicy.SKIP)) {
+                                return CompletableFuture.<Void>completedFuture(null);
+                            }
+                            if (slow) {
+                                slowHomes.add(home);
+                                return CompletableFuture.<Void>completedFuture(null);
+                            }
+                            return checkHomeAsync(context, home, false);
+                        }))
                         .toArray(CompletableFuture[]::new))
-                .thenApply(Void -> installations.stream().sorted().collect(Collectors.toList()));
+                .thenCompose(Void -> CompletableFuture.allOf(slowHomes
+                        .stream()
+                        .map(home -> checkHomeAsync(context, home, true))
+                        .toArray(CompletableFuture[]::new)));
+    }
 
+    /**
+     * Checks a single candidate home, but stops waiting for it once the root timeout has passed
+     */
+    private @NotNull CompletableFuture<Void> checkHomeAsync(@NotNull ScanContext context, @NotNull File home, boolean slowFileSystem) {
+        CompletableFuture<Void> check = CompletableFuture.runAsync(() -> new DirectoryCrawler(home, OperatingSystem.CURRENT, context).checkHome(), crawlExecutor);
+        Duration timeout = context.getRootTimeout(slowFileSystem);
+        return timeout == null ? check : ScanContext.completeOnTimeout(check, timeout.toNanos(), () -> null);
+    }
+
+    private @NotNull CompletableFuture<Void> discoverAndCrawlAsync(@NotNull ScanContext context) {
+        return discoverAsync(context).thenCompose(locations -> crawlAsync(context, locations));
+    }
+
+    /**
+     * Crawls the given locations on the crawl executor, those on remote or FUSE file systems last, depending on the
+     * {@link SlowFileSystemPolicy}. The returned future completes once all of them have been crawled and all found
+     * installations have been probed, even if crawling failed.
+     */
+    private @NotNull CompletableFuture<Void> crawlAsync(@NotNull ScanContext context, @NotNull Collection<File> locations) {
+        List<File> fastLocations = new CopyOnWriteArrayList<>();
+        List<File> slowLocations = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> crawled = CompletableFuture.allOf(locations
+                        .stream()
+                        .map(location -> checkFileSystemAsync(context, location).thenAccept(slow -> {
+                            if (slow == null) {
+                                // Didn't even answer which file system it's on
+                                context.abandonRoot(location, true);
+                            } else if (!slow) {
+                                fastLocations.add(location);
+                            } else if (context.getSlowFileSystemPolicy() == SlowFileSystemPolicy.SKIP) {
+                                context.onRootFinished(location);
+                            } else {
+                                slowLocations.add(location);
+                            }
+                        }))
+                        .toArray(CompletableFuture[]::new))
+                .thenCompose(Void -> crawlRootsAsync(context, fastLocations, false))
+                .thenCompose(Void -> crawlSlowLocationsAsync(context, slowLocations));
+        return crawled.handle((Void, error) -> error)
+                .thenCompose(crawlError -> context.whenProbesFinished().thenRun(() -> {
+                    if (crawlError != null) {
+                        throw crawlError instanceof CompletionException ? (CompletionException) crawlError : new CompletionException(crawlError);
+                    }
+                }));
+    }
+
+    private @NotNull CompletableFuture<Void> crawlRootsAsync(@NotNull ScanContext context, @NotNull Collection<File> locations, boolean slowFileSystem) {
+        return CompletableFuture.allOf(locations
+                .stream()
+                .map(location -> new DirectoryCrawler(location, OperatingSystem.CURRENT, context, slowFileSystem).crawlAsync())
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Crawls the given locations and the slow mount points that have been deferred while crawling, until none are left
+     */
+    private @NotNull CompletableFuture<Void> crawlSlowLocationsAsync(@NotNull ScanContext context, @NotNull List<File> slowLocations) {
+        List<File> deferredDirectories = context.pollDeferredDirectories();
+        context.addRoots(deferredDirectories);
+        List<File> locations = new ArrayList<>(slowLocations);
+        locations.addAll(deferredDirectories);
+        if (locations.isEmpty() || context.isCancelled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return crawlRootsAsync(context, locations, true).thenCompose(Void -> crawlSlowLocationsAsync(context, Collections.emptyList()));
+    }
+
+    /**
+     * Finds out whether the given location is on a remote or FUSE file system. Off Linux, that means asking the file
+     * system itself, which blocks if it doesn't respond, so it's done on the crawl executor with the timeout of a slow
+     * search directory. Completes with null if it takes longer than that.
+     */
+    private @NotNull CompletableFuture<Boolean> checkFileSystemAsync(@NotNull ScanContext context, @NotNull File location) {
+        if (context.getSlowFileSystemPolicy() == SlowFileSystemPolicy.CRAWL) {
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Boolean> check = CompletableFuture.supplyAsync(() -> context.isOnSlowFileSystem(location), context.getCrawlExecutor());
+        Duration timeout = context.getRootTimeout(true);
+        return ScanContext.completeOnTimeout(check, timeout.toNanos(), () -> null);
     }
 
 
@@ -1,7 +1,10 @@
 package com.jeff_media.javafinder;
 
 import java.io.File;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Builder for {@link JavaFinder}
@@ -10,6 +13,26 @@ public class JavaFinderBuilder {
 
     private final Set<File> searchDirectories = new HashSet<>();
     private boolean checkDefaultLocations = true;
+    private boolean usePackageMetadata = true;
+    private VersionDetectionMode versionDetectionMode = VersionDetectionMode.AUTO;
+    private File registryFile = null;
+    private int maxConcurrentProbes = ProbeExecutor.DEFAULT_MAX_CONCURRENT_PROBES;
+    private Duration probeTimeout = ProbeExecutor.DEFAULT_PROBE_TIMEOUT;
+    private Consumer<ProbeResult> probeListener = null;
+    private boolean parallelCrawl = false;
+    private Executor crawlExecutor = DefaultExecutors.crawl();
+    private Executor probeExecutor = DefaultExecutors.probe();
+    private Consumer<ScanStatistics> statisticsListener = null;
+    private boolean retainVersionOutput = false;
+    private boolean prefetchVersions = false;
+    private Duration scanBudget = null;
+    private SlowFileSystemPolicy slowFileSystemPolicy = SlowFileSystemPolicy.DEPRIORITIZE;
+    private Duration rootTimeout = null;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxDirectoriesPerRoot = Integer.MAX_VALUE;
+    private final Set<String> includedPaths = new LinkedHashSet<>();
+    private final Set<String> excludedPaths = new LinkedHashSet<>();
+    private final Set<String> excludedDirectoryNames = new LinkedHashSet<>(JavaHomeLayout.DEFAULT_EXCLUDED_DIRECTORY_NAMES);
 
     /**
      * Adds one or more search directories. Non-existing directories will be silently ignored.
@@ -51,6 +74,471 @@ public class JavaFinderBuilder {
         return checkDefaultLocations;
     }
 
+    /**
+     * Whether to find the installations registered by the operating system's package manager by reading its metadata,
+     * instead of crawling the directories they're installed in. On Linux, this reads the .jinfo files in /usr/lib/jvm
+     * and the update-alternatives state, and /usr/lib/jvm is only crawled if no metadata was found. Only used if
+     * {@link #checkDefaultLocations(boolean)} is enabled. Default is true. Set to false to crawl /usr/lib/jvm
+     * anyway, e.g. to also find installations that have been extracted there manually. Also used by
+     * {@link JavaFinder#quickScan()}.
+     * @param usePackageMetadata whether to read package metadata instead of crawling package directories
+     * @return this builder
+     * @see #isUsePackageMetadata()
+     */
+    public JavaFinderBuilder usePackageMetadata(boolean usePackageMetadata) {
+        this.usePackageMetadata = usePackageMetadata;
+        return this;
+    }
+
+    /**
+     * Whether to find the installations registered by the operating system's package manager by reading its metadata. Default is true.
+     * @return whether to read package metadata instead of crawling package directories
+     * @see #usePackageMetadata(boolean)
+     */
+    public boolean isUsePackageMetadata() {
+        return usePackageMetadata;
+    }
+
+    /**
+     * How to detect the version of found Java installations. Default is {@link VersionDetectionMode#AUTO}, which reads
+     * the release file and only runs {@code java -version} if that fails.
+     * @param versionDetectionMode how to detect the version of found Java installations
+     * @return this builder
+     * @see #getVersionDetectionMode()
+     */
+    public JavaFinderBuilder versionDetectionMode(VersionDetectionMode versionDetectionMode) {
+        this.versionDetectionMode = Objects.requireNonNull(versionDetectionMode);
+        return this;
+    }
+
+    /**
+     * How to detect the version of found Java installations. Default is {@link VersionDetectionMode#AUTO}.
+     * @return how to detect the version of found Java installations
+     * @see #versionDetectionMode(VersionDetectionMode)
+     */
+    public VersionDetectionMode getVersionDetectionMode() {
+        return versionDetectionMode;
+    }
+
+    /**
+     * Sets the file used as persistent registry of already detected Java installations. The registry can be shared by
+     * any number of processes on the same host. Installations whose java executable didn't change since they were
+     * stored in the registry don't need their version to be detected again. Default is null, which disables the registry.
+     * @param registryFile registry file, or null to disable the registry
+     * @return this builder
+     * @see #getRegistryFile()
+     */
+    public JavaFinderBuilder registryFile(File registryFile) {
+        this.registryFile = registryFile;
+        return this;
+    }
+
+    /**
+     * Returns the file used as persistent registry of already detected Java installations, or null if the registry is disabled.
+     * @return registry file, or null if the registry is disabled
+     * @see #registryFile(File)
+     */
+    public File getRegistryFile() {
+        return registryFile;
+    }
+
+    /**
+     * Sets the maximum number of {@code java -version} processes that may run at the same time. Default is the number of available processors.
+     * @param maxConcurrentProbes maximum number of concurrent {@code java -version} processes
+     * @return this builder
+     * @see #getMaxConcurrentProbes()
+     */
+    public JavaFinderBuilder maxConcurrentProbes(int maxConcurrentProbes) {
+        if (maxConcurrentProbes < 1) {
+            throw new IllegalArgumentException("maxConcurrentProbes must be at least 1");
+        }
+        this.maxConcurrentProbes = maxConcurrentProbes;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of {@code java -version} processes that may run at the same time.
+     * @return maximum number of concurrent {@code java -version} processes
+     * @see #maxConcurrentProbes(int)
+     */
+    public int getMaxConcurrentProbes() {
+        return maxConcurrentProbes;
+    }
+
+    /**
+     * Sets how long a single {@code java -version} process may run before it gets killed. Installations whose probe
+     * timed out will be ignored. Default is 10 seconds.
+     * @param probeTimeout timeout for a single {@code java -version} process
+     * @return this builder
+     * @see #getProbeTimeout()
+     */
+    public JavaFinderBuilder probeTimeout(Duration probeTimeout) {
+        if (probeTimeout.isNegative() || probeTimeout.isZero()) {
+            throw new IllegalArgumentException("probeTimeout must be positive");
+        }
+        this.probeTimeout = probeTimeout;
+        return this;
+    }
+
+    /**
+     * Returns how long a single {@code java -version} process may run before it gets killed.
+     * @return timeout for a single {@code java -version} process
+     * @see #probeTimeout(Duration)
+     */
+    public Duration getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    /**
+     * Sets a listener that gets called with the result of every version detection, including failed and timed out ones. Default is null.
+     * @param probeListener listener, or null
+     * @return this builder
+     * @see #getProbeListener()
+     */
+    public JavaFinderBuilder probeListener(Consumer<ProbeResult> probeListener) {
+        this.probeListener = probeListener;
+        return this;
+    }
+
+    /**
+     * Returns the listener that gets called with the result of every version detection, or null if there is none.
+     * @return listener, or null
+     * @see #probeListener(Consumer)
+     */
+    public Consumer<ProbeResult> getProbeListener() {
+        return probeListener;
+    }
+
+    /**
+     * Whether to crawl each search directory using multiple threads. Every subdirectory is submitted as its own task to
+     * the {@link #crawlExecutor(Executor) crawl executor}, so searching a single large directory scales with the number
+     * of its threads. Default is false, which crawls every search directory on a single thread.
+     * @param parallelCrawl whether to crawl each search directory using multiple threads
+     * @return this builder
+     * @see #isParallelCrawl()
+     */
+    public JavaFinderBuilder parallelCrawl(boolean parallelCrawl) {
+        this.parallelCrawl = parallelCrawl;
+        return this;
+    }
+
+    /**
+     * Whether to crawl each search directory using multiple threads. Default is false.
+     * @return whether to crawl each search directory using multiple threads
+     * @see #parallelCrawl(boolean)
+     */
+    public boolean isParallelCrawl() {
+        return parallelCrawl;
+    }
+
+    /**
+     * Sets the executor that search directories are crawled on. With {@link #parallelCrawl(boolean)}, every directory
+     * is submitted as its own task. Crawling mostly waits for the file system, so this shouldn't be a pool that other
+     * code depends on, like the common fork/join pool. Default is a shared pool of daemon threads, or virtual threads
+     * on Java 21 and newer.
+     * @param crawlExecutor executor for crawling, or null to use the default
+     * @return this builder
+     * @see #getCrawlExecutor()
+     */
+    public JavaFinderBuilder crawlExecutor(Executor crawlExecutor) {
+        this.crawlExecutor = crawlExecutor == null ? DefaultExecutors.crawl() : crawlExecutor;
+        return this;
+    }
+
+    /**
+     * Returns the executor that search directories are crawled on.
+     * @return executor for crawling
+     * @see #crawlExecutor(Executor)
+     */
+    public Executor getCrawlExecutor() {
+        return crawlExecutor;
+    }
+
+    /**
+     * Sets the executor that the versions of found installations are detected on. Each task waits for a
+     * {@code java -version} process or reads a release file, and the number of processes running at the same time is
+     * still limited by {@link #maxConcurrentProbes(int)}. Default is a shared pool of daemon threads, or virtual
+     * threads on Java 21 and newer.
+     * @param probeExecutor executor for version detection, or null to use the default
+     * @return this builder
+     * @see #getProbeExecutor()
+     */
+    public JavaFinderBuilder probeExecutor(Executor probeExecutor) {
+        this.probeExecutor = probeExecutor == null ? DefaultExecutors.probe() : probeExecutor;
+        return this;
+    }
+
+    /**
+     * Returns the executor that the versions of found installations are detected on.
+     * @return executor for version detection
+     * @see #probeExecutor(Executor)
+     */
+    public Executor getProbeExecutor() {
+        return probeExecutor;
+    }
+
+    /**
+     * Adds one or more names of directories that should never be searched, in addition to the built-in ones like
+     * "node_modules" or ".git".
+     * @param names directory names to exclude
+     * @return this builder
+     * @see #getExcludedDirectoryNames()
+     */
+    public JavaFinderBuilder excludeDirectoryNames(String... names) {
+        excludedDirectoryNames.addAll(Arrays.asList(names));
+        return this;
+    }
+
+    /**
+     * Returns the names of directories that will never be searched, including the built-in ones.
+     * @return excluded directory names
+     * @see #excludeDirectoryNames(String...)
+     */
+    public Collection<String> getExcludedDirectoryNames() {
+        return Collections.unmodifiableCollection(excludedDirectoryNames);
+    }
+
+    /**
+     * Sets a listener that gets called with the {@link ScanStatistics} of every search once it has finished. Default is null.
+     * @param statisticsListener listener, or null
+     * @return this builder
+     * @see #getStatisticsListener()
+     */
+    public JavaFinderBuilder statisticsListener(Consumer<ScanStatistics> statisticsListener) {
+        this.statisticsListener = statisticsListener;
+        return this;
+    }
+
+    /**
+     * Returns the listener that gets called with the {@link ScanStatistics} of every search, or null if there is none.
+     * @return listener, or null
+     * @see #statisticsListener(Consumer)
+     */
+    public Consumer<ScanStatistics> getStatisticsListener() {
+        return statisticsListener;
+    }
+
+    /**
+     * Whether {@link JavaVersion#getJavaVersionOutput()} should contain the output of {@code java -version}. Most
+     * callers only need the parsed version, so the output is dropped after parsing unless this is enabled.
+     * Default is false.
+     * @param retainVersionOutput whether to keep the output of {@code java -version}
+     * @return this builder
+     * @see #isRetainVersionOutput()
+     */
+    public JavaFinderBuilder retainVersionOutput(boolean retainVersionOutput) {
+        this.retainVersionOutput = retainVersionOutput;
+        return this;
+    }
+
+    /**
+     * Whether {@link JavaVersion#getJavaVersionOutput()} should contain the output of {@code java -version}. Default is false.
+     * @return whether to keep the output of {@code java -version}
+     * @see #retainVersionOutput(boolean)
+     */
+    public boolean isRetainVersionOutput() {
+        return retainVersionOutput;
+    }
+
+    /**
+     * Whether the versions of {@link LazyJavaInstallation}s should be detected in the background as soon as they've
+     * been found, instead of on first access. Default is false.
+     * @param prefetchVersions whether to detect the versions of lazy installations in the background
+     * @return this builder
+     * @see #isPrefetchVersions()
+     * @see JavaFinder#findLazyInstallationsAsync()
+     */
+    public JavaFinderBuilder prefetchVersions(boolean prefetchVersions) {
+        this.prefetchVersions = prefetchVersions;
+        return this;
+    }
+
+    /**
+     * Whether the versions of {@link LazyJavaInstallation}s should be detected in the background. Default is false.
+     * @return whether to detect the versions of lazy installations in the background
+     * @see #prefetchVersions(boolean)
+     */
+    public boolean isPrefetchVersions() {
+        return prefetchVersions;
+    }
+
+    /**
+     * Sets how long a whole search may take. Once the budget has run out, crawling stops, pending version detections
+     * are abandoned and running {@code java -version} processes get killed. The search then completes with the
+     * installations found so far, and {@link JavaFinder#scanAsync()} reports the result as
+     * {@link ScanResult#isPartial() partial}. Default is null, which means there is no budget.
+     * @param scanBudget maximum duration of a search, or null
+     * @return this builder
+     * @see #getScanBudget()
+     */
+    public JavaFinderBuilder scanBudget(Duration scanBudget) {
+        if (scanBudget != null && (scanBudget.isNegative() || scanBudget.isZero())) {
+            throw new IllegalArgumentException("scanBudget must be positive");
+        }
+        this.scanBudget = scanBudget;
+        return this;
+    }
+
+    /**
+     * Returns how long a whole search may take, or null if there is no budget.
+     * @return maximum duration of a search, or null
+     * @see #scanBudget(Duration)
+     */
+    public Duration getScanBudget() {
+        return scanBudget;
+    }
+
+    /**
+     * How to crawl search directories on remote or FUSE file systems, like NFS, SMB or SSHFS. Default is
+     * {@link SlowFileSystemPolicy#DEPRIORITIZE}, which crawls them after all other directories.
+     * @param slowFileSystemPolicy how to crawl directories on remote or FUSE file systems
+     * @return this builder
+     * @see #getSlowFileSystemPolicy()
+     */
+    public JavaFinderBuilder slowFileSystemPolicy(SlowFileSystemPolicy slowFileSystemPolicy) {
+        this.slowFileSystemPolicy = Objects.requireNonNull(slowFileSystemPolicy);
+        return this;
+    }
+
+    /**
+     * How to crawl search directories on remote or FUSE file systems. Default is {@link SlowFileSystemPolicy#DEPRIORITIZE}.
+     * @return how to crawl directories on remote or FUSE file systems
+     * @see #slowFileSystemPolicy(SlowFileSystemPolicy)
+     */
+    public SlowFileSystemPolicy getSlowFileSystemPolicy() {
+        return slowFileSystemPolicy;
+    }
+
+    /**
+     * Sets how long crawling a single search directory may take. Once that time has passed, its crawl is abandoned,
+     * even if it's stuck listing a directory on an unresponsive file system, and {@link JavaFinder#scanAsync()}
+     * reports it as {@link ScanResult#getUnfinishedRoots() unfinished}. Installations that have already been found in
+     * it are kept. Default is null, which means that only search directories on remote or FUSE file systems get a
+     * timeout of 30 seconds, see {@link #slowFileSystemPolicy(SlowFileSystemPolicy)}.
+     * @param rootTimeout maximum duration of crawling a single search directory, or null
+     * @return this builder
+     * @see #getRootTimeout()
+     */
+    public JavaFinderBuilder rootTimeout(Duration rootTimeout) {
+        if (rootTimeout != null && (rootTimeout.isNegative() || rootTimeout.isZero())) {
+            throw new IllegalArgumentException("rootTimeout must be positive");
+        }
+        this.rootTimeout = rootTimeout;
+        return this;
+    }
+
+    /**
+     * Returns how long crawling a single search directory may take, or null if only search directories on remote or
+     * FUSE file systems have a timeout.
+     * @return maximum duration of crawling a single search directory, or null
+     * @see #rootTimeout(Duration)
+     */
+    public Duration getRootTimeout() {
+        return rootTimeout;
+    }
+
+    /**
+     * Sets how many levels below a search directory are searched. At 0, only the search directories themselves are
+     * checked for being a Java home. At 1, their subdirectories are checked as well, and so on. Default is unlimited.
+     * @param maxDepth maximum depth below a search directory
+     * @return this builder
+     * @see #getMaxDepth()
+     */
+    public JavaFinderBuilder maxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative");
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Returns how many levels below a search directory are searched, or {@link Integer#MAX_VALUE} if that's unlimited.
+     * @return maximum depth below a search directory
+     * @see #maxDepth(int)
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets how many directories may be listed while crawling a single search directory. Once the limit is reached, its
+     * crawl is stopped and {@link JavaFinder#scanAsync()} reports it as
+     * {@link ScanResult#getUnfinishedRoots() unfinished}. Default is unlimited.
+     * @param maxDirectoriesPerRoot maximum number of directories listed per search directory
+     * @return this builder
+     * @see #getMaxDirectoriesPerRoot()
+     */
+    public JavaFinderBuilder maxDirectoriesPerRoot(int maxDirectoriesPerRoot) {
+        if (maxDirectoriesPerRoot < 1) {
+            throw new IllegalArgumentException("maxDirectoriesPerRoot must be at least 1");
+        }
+        this.maxDirectoriesPerRoot = maxDirectoriesPerRoot;
+        return this;
+    }
+
+    /**
+     * Returns how many directories may be listed while crawling a single search directory, or
+     * {@link Integer#MAX_VALUE} if that's unlimited.
+     * @return maximum number of directories listed per search directory
+     * @see #maxDirectoriesPerRoot(int)
+     */
+    public int getMaxDirectoriesPerRoot() {
+        return maxDirectoriesPerRoot;
+    }
+
+    /**
+     * Adds one or more glob patterns, like {@code /opt/**} or {@code **}{@code /jdk*}, that are matched against the
+     * absolute path of Java homes. If any are set, only Java homes that match at least one of them are added. All other
+     * directories are still searched, unless they're excluded.
+     * @param globs glob patterns in the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}, without the "glob:" prefix
+     * @return this builder
+     * @see #getIncludedPaths()
+     */
+    public JavaFinderBuilder includePaths(String... globs) {
+        for (String glob : globs) {
+            // Fail early on invalid patterns
+            PathGlobs.compile(glob);
+            includedPaths.add(glob);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the glob patterns that Java homes have to match. Empty if all Java homes are added.
+     * @return glob patterns of included Java homes
+     * @see #includePaths(String...)
+     */
+    public Collection<String> getIncludedPaths() {
+        return Collections.unmodifiableCollection(includedPaths);
+    }
+
+    /**
+     * Adds one or more glob patterns, like {@code **}{@code /node_modules} or {@code /home/*}{@code /.cache/**}, that
+     * are matched against the absolute path of every directory found while crawling. Matching directories are
+     * neither searched nor checked for being a Java home. The search directories themselves are always searched.
+     * @param globs glob patterns in the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}, without the "glob:" prefix
+     * @return this builder
+     * @see #getExcludedPaths()
+     * @see #excludeDirectoryNames(String...)
+     */
+    public JavaFinderBuilder excludePaths(String... globs) {
+        for (String glob : globs) {
+            PathGlobs.compile(glob);
+            excludedPaths.add(glob);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the glob patterns of directories that will never be searched.
+     * @return glob patterns of excluded directories
+     * @see #excludePaths(String...)
+     */
+    public Collection<String> getExcludedPaths() {
+        return Collections.unmodifiableCollection(excludedPaths);
+    }
+
     /**
      * Returns the manually added search directories (excluding the default locations, if {@link #checkDefaultLocations(boolean)} is set to true).
      * @return the manually added search directories
@@ -73,7 +561,7 @@ public class JavaFinderBuilder {
         if(checkDefaultLocations) {
             searchDirectories.addAll(JavaFinder.getDefaultJavaLocations());
         }
-        return new JavaFinder(searchDirectories);
+        return new JavaFinder(searchDirectories, this);
     }
 
 }
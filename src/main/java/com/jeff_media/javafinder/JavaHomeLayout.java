@@ -0,0 +1,140 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Knowledge about the directory layout of Java installations, used to decide where to look for them and where not.
+ */
+class JavaHomeLayout {
+
+    /**
+     * Name of the directory inside a Java home that contains the executables
+     */
+    static final String BIN = "bin";
+
+    /**
+     * Paths relative to a Java home that may contain another Java home, e.g. the JRE bundled with JDK 8 and older, or
+     * the macOS bundle layout. These are the only directories of a Java home that will be searched.
+     */
+    static final List<List<String>> NESTED_RUNTIMES = Collections.unmodifiableList(Arrays.asList(
+            Collections.singletonList("jre"),
+            Arrays.asList("Contents", "Home")
+    ));
+
+    /**
+     * Names of directories that never contain Java installations
+     */
+    static final Set<String> DEFAULT_EXCLUDED_DIRECTORY_NAMES = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            // VCS metadata and other well-known huge trees
+            ".git", ".svn", ".hg", "node_modules", "__pycache__"
+    )));
+
+    /**
+     * Names of directories inside of Java homes. They are only skipped below a Java home, like /usr, whose bin/java is
+     * a link and which is therefore searched, since e.g. ~/demo might very well contain a JDK.
+     */
+    static final Set<String> JAVA_HOME_CONTENT_NAMES = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "legal", "jmods", "include", "man", "demo", "sample"
+    )));
+
+    private JavaHomeLayout() {
+
+    }
+
+    static boolean isBinDirectory(@NotNull String name) {
+        return BIN.equals(name);
+    }
+
+    /**
+     * Returns the paths of all possible nested runtimes of the given Java home
+     */
+    static @NotNull List<Path> resolveNestedRuntimes(@NotNull Path home) {
+        List<Path> nestedRuntimes = new ArrayList<>(NESTED_RUNTIMES.size());
+        for (List<String> nestedRuntime : NESTED_RUNTIMES) {
+            Path path = home;
+            for (String name : nestedRuntime) {
+                path = path.resolve(name);
+            }
+            nestedRuntimes.add(path);
+        }
+        return nestedRuntimes;
+    }
+
+    /**
+     * Returns the Java home that contains the given executable, or null if it's not located in a bin directory
+     */
+    static @Nullable File getHomeOfExecutable(@NotNull File executable) {
+        File bin = executable.getParentFile();
+        if (bin == null || !isBinDirectory(bin.getName())) {
+            return null;
+        }
+        return bin.getParentFile();
+    }
+
+    /**
+     * Adds the Java home that contains the given executable to the given candidates. If that's a nested runtime like
+     * the JRE of JDK 8, the outer home is added as well.
+     */
+    static void addHomeOfExecutable(@NotNull File executable, @NotNull Collection<File> homes) {
+        File home = getHomeOfExecutable(executable);
+        if (home == null) {
+            return;
+        }
+        homes.add(home);
+        File outerHome = getOuterHome(home);
+        if (outerHome != null) {
+            homes.add(outerHome);
+        }
+    }
+
+    /**
+     * Returns the Java home that the given home is nested in, e.g. the JDK 8 that contains the given jre directory, or
+     * null if the path doesn't look like a nested runtime
+     */
+    static @Nullable File getOuterHome(@NotNull File home) {
+        for (List<String> nestedRuntime : NESTED_RUNTIMES) {
+            File outer = home;
+            for (int i = nestedRuntime.size() - 1; i >= 0 && outer != null; i--) {
+                outer = nestedRuntime.get(i).equals(outer.getName()) ? outer.getParentFile() : null;
+            }
+            if (outer != null) {
+                return outer;
+            }
+        }
+        return null;
+    }
+}
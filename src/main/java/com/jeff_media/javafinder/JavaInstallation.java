@@ -25,9 +25,13 @@ package com.jeff_media.javafinder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 
 /**
  * Represents a Java installation
@@ -41,36 +45,81 @@ public class JavaInstallation implements Comparable<JavaInstallation> {
     private final @NotNull JavaVersion version;
     private final @NotNull JavaType type;
     private final boolean isCurrentJavaVersion;
+    private final @NotNull Set<File> aliases;
 
     public JavaInstallation(@NotNull File homeDirectory,
                             @NotNull File javaExecutable,
                             @Nullable File javaxExecutable,
                             @NotNull JavaType type) throws IOException {
+        this(homeDirectory, javaExecutable, javaxExecutable, type, VersionDetectionMode.AUTO);
+    }
+
+    public JavaInstallation(@NotNull File homeDirectory,
+                            @NotNull File javaExecutable,
+                            @Nullable File javaxExecutable,
+                            @NotNull JavaType type,
+                            @NotNull VersionDetectionMode versionDetectionMode) throws IOException {
+        this(homeDirectory, javaExecutable, javaxExecutable, type, probeVersion(homeDirectory, javaExecutable, versionDetectionMode, ProbeExecutor.DEFAULT).getVersionOrThrow());
+    }
+
+    JavaInstallation(@NotNull File homeDirectory,
+                     @NotNull File javaExecutable,
+                     @Nullable File javaxExecutable,
+                     @NotNull JavaType type,
+                     @NotNull JavaVersion version) {
+        this(homeDirectory, javaExecutable, javaxExecutable, type, version, ConcurrentHashMap.<File>newKeySet());
+    }
+
+    /**
+     * @param aliases other home directories that point to this installation. The set must be thread-safe, since the
+     *                search can add more aliases after the installation has been created.
+     */
+    JavaInstallation(@NotNull File homeDirectory,
+                     @NotNull File javaExecutable,
+                     @Nullable File javaxExecutable,
+                     @NotNull JavaType type,
+                     @NotNull JavaVersion version,
+                     @NotNull Set<File> aliases) {
+        this.aliases = aliases;
         this.homeDirectory = homeDirectory;
         this.javaExecutable = javaExecutable;
         this.javacExecutable = javaxExecutable;
         this.type = type;
-        this.version = JavaVersion.fromJavaVersionOutput(captureJavaVersionOutput());
+        this.version = version;
+        this.isCurrentJavaVersion = isCurrentJavaHome(homeDirectory);
+    }
+
+    /**
+     * Whether the given directory is the home of the running JVM. Both paths are resolved first, since java.home as
+     * well as found homes might contain symbolic links, e.g. /usr/lib/jvm/default-java.
+     */
+    static boolean isCurrentJavaHome(@NotNull File homeDirectory) {
         String currentJavaHome = System.getProperty("java.home");
-        if (currentJavaHome != null) {
-            isCurrentJavaVersion = currentJavaHome.equals(homeDirectory.getAbsolutePath());
-        } else {
-            isCurrentJavaVersion = false;
-        }
+        return currentJavaHome != null
+                && SearchRoots.canonicalize(new File(currentJavaHome)).equals(SearchRoots.canonicalize(homeDirectory));
     }
 
-    private List<String> captureJavaVersionOutput() throws IOException {
-        ProcessBuilder builder = new ProcessBuilder(javaExecutable.getAbsolutePath(), "-version");
-        List<String> completeVersionOutput = new ArrayList<>();
-            Process process = builder.start();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    completeVersionOutput.add(line);
-                }
-            }
+    static ProbeResult probeVersion(File homeDirectory, File javaExecutable, VersionDetectionMode versionDetectionMode, ProbeExecutor probeExecutor) {
+        return probeVersion(homeDirectory, javaExecutable, versionDetectionMode, probeExecutor, ProbeExecutor.NO_DEADLINE, ProbeExecutor.NOT_CANCELLABLE);
+    }
 
-        return completeVersionOutput;
+    /**
+     * @param deadline {@link System#nanoTime()} value after which a running {@code java -version} process gets killed,
+     *                 or {@link ProbeExecutor#NO_DEADLINE}
+     * @param cancelled kills a running {@code java -version} process once it becomes true
+     */
+    static ProbeResult probeVersion(File homeDirectory, File javaExecutable, VersionDetectionMode versionDetectionMode, ProbeExecutor probeExecutor, long deadline,
+                                    BooleanSupplier cancelled) {
+        if (versionDetectionMode != VersionDetectionMode.PROCESS) {
+            JavaVersion releaseFileVersion = ReleaseFile.readVersion(homeDirectory);
+            if (releaseFileVersion != null) {
+                return ProbeResult.parsed(javaExecutable, releaseFileVersion);
+            }
+            if (versionDetectionMode == VersionDetectionMode.RELEASE_FILE) {
+                return ProbeResult.failed(javaExecutable, new IOException("No parseable release file found in " + homeDirectory.getAbsolutePath()), new ArrayList<>());
+            }
+        }
+        return probeExecutor.probe(javaExecutable, deadline, cancelled);
     }
 
     @Override
@@ -92,6 +141,18 @@ public class JavaInstallation implements Comparable<JavaInstallation> {
         return this.homeDirectory;
     }
 
+    /**
+     * Returns the other directories this Java installation has been found through, e.g. symlinks like
+     * /usr/lib/jvm/default-java or SDKMAN's "current" that point to {@link #getHomeDirectory()}. Every installation
+     * is only reported once, using its real home directory. Aliases can still be added while the search is running.
+     *
+     * @return other home directories of this installation, not including {@link #getHomeDirectory()}
+     */
+    @NotNull
+    public Set<File> getAliases() {
+        return Collections.unmodifiableSet(this.aliases);
+    }
+
     /**
      * Returns the executable of this Java installation
      *
@@ -182,6 +243,6 @@ public class JavaInstallation implements Comparable<JavaInstallation> {
     }
 
     public String toString() {
-        return "JavaInstallation(homeDirectory=" + this.getHomeDirectory() + ", executable=" + this.getJavaExecutable() + ", version=" + this.getVersion() + ", type=" + this.getType() + ", isCurrentJavaVersion=" + this.isCurrentJavaVersion() + ")";
+        return "JavaInstallation(homeDirectory=" + this.getHomeDirectory() + ", executable=" + this.getJavaExecutable() + ", version=" + this.getVersion() + ", type=" + this.getType() + ", isCurrentJavaVersion=" + this.isCurrentJavaVersion() + ", aliases=" + this.getAliases() + ")";
     }
 }
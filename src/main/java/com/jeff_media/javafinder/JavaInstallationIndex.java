@@ -0,0 +1,287 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Immutable index of Java installations that answers lookups by major version, major version range and
+ * {@link JavaType} without filtering all installations, e.g. to aggregate the installations of many machines.
+ * <p>
+ * Every query returns installations in the same preference order:
+ * <ol>
+ *     <li>newer versions first, see {@link JavaVersion#compareTo(JavaVersion)}</li>
+ *     <li>JDKs before JREs of the same version</li>
+ *     <li>the currently running installation before others with the same version and type</li>
+ *     <li>home directories in lexicographic order</li>
+ * </ol>
+ * The "best" installation is always the first one in this order.
+ */
+public final class JavaInstallationIndex {
+
+    private static final Comparator<JavaInstallation> PREFERENCE_ORDER = Comparator.<JavaInstallation>naturalOrder()
+            .thenComparing(JavaInstallation::isCurrentJavaVersion, Comparator.reverseOrder())
+            .thenComparing(JavaInstallation::getHomeDirectory);
+
+    private static final JavaInstallationIndex EMPTY = new JavaInstallationIndex(Collections.emptyList());
+
+    private final @NotNull List<JavaInstallation> installations;
+    private final @NotNull NavigableMap<Integer, List<JavaInstallation>> byMajor;
+    private final @NotNull Map<JavaType, NavigableMap<Integer, List<JavaInstallation>>> byTypeAndMajor = new EnumMap<>(JavaType.class);
+    private final @NotNull Map<JavaType, List<JavaInstallation>> byType = new EnumMap<>(JavaType.class);
+    private final JavaInstallation current;
+
+    private JavaInstallationIndex(@NotNull Collection<? extends JavaInstallation> installations) {
+        List<JavaInstallation> sorted = new ArrayList<>(installations);
+        sorted.sort(PREFERENCE_ORDER);
+        this.installations = Collections.unmodifiableList(sorted);
+
+        Map<JavaType, List<JavaInstallation>> typeLists = new EnumMap<>(JavaType.class);
+        for (JavaType type : JavaType.values()) {
+            typeLists.put(type, new ArrayList<>());
+        }
+        JavaInstallation currentInstallation = null;
+        for (JavaInstallation installation : sorted) {
+            typeLists.get(installation.getType()).add(installation);
+            if (currentInstallation == null && installation.isCurrentJavaVersion()) {
+                currentInstallation = installation;
+            }
+        }
+        this.current = currentInstallation;
+        this.byMajor = groupByMajor(sorted);
+        for (JavaType type : JavaType.values()) {
+            List<JavaInstallation> ofType = typeLists.get(type);
+            byType.put(type, Collections.unmodifiableList(ofType));
+            byTypeAndMajor.put(type, groupByMajor(ofType));
+        }
+    }
+
+    /**
+     * Creates an index of the given installations, e.g. {@link ScanResult#getInstallations()} or the installations of
+     * several scans combined. Duplicates are kept.
+     *
+     * @param installations installations to index
+     * @return index of the given installations
+     */
+    public static @NotNull JavaInstallationIndex of(@NotNull Collection<? extends JavaInstallation> installations) {
+        return installations.isEmpty() ? EMPTY : new JavaInstallationIndex(installations);
+    }
+
+    /**
+     * Splits installations that are already in preference order into one list per major version
+     */
+    private static @NotNull NavigableMap<Integer, List<JavaInstallation>> groupByMajor(@NotNull List<JavaInstallation> sorted) {
+        TreeMap<Integer, List<JavaInstallation>> groups = new TreeMap<>();
+        int start = 0;
+        for (int i = 1; i <= sorted.size(); i++) {
+            if (i == sorted.size() || sorted.get(i).getVersion().getMajor() != sorted.get(start).getVersion().getMajor()) {
+                groups.put(sorted.get(start).getVersion().getMajor(), Collections.unmodifiableList(new ArrayList<>(sorted.subList(start, i))));
+                start = i;
+            }
+        }
+        return Collections.unmodifiableNavigableMap(groups);
+    }
+
+    /**
+     * Returns all installations
+     *
+     * @return all installations, in preference order
+     */
+    public @NotNull List<JavaInstallation> getAll() {
+        return installations;
+    }
+
+    /**
+     * Returns the number of installations
+     *
+     * @return number of installations
+     */
+    public int size() {
+        return installations.size();
+    }
+
+    /**
+     * Returns whether this index doesn't contain any installation
+     *
+     * @return whether this index is empty
+     */
+    public boolean isEmpty() {
+        return installations.isEmpty();
+    }
+
+    /**
+     * Returns the installation that is currently running this code, if it's part of this index
+     *
+     * @return the current installation, or an empty optional
+     */
+    public @NotNull Optional<JavaInstallation> getCurrent() {
+        return Optional.ofNullable(current);
+    }
+
+    /**
+     * Returns all major versions that at least one installation has, from oldest to newest
+     *
+     * @return major versions
+     */
+    public @NotNull NavigableSet<Integer> getMajorVersions() {
+        return byMajor.navigableKeySet();
+    }
+
+    /**
+     * Returns all installations of the given type
+     *
+     * @param type JDK or JRE
+     * @return installations of the given type, in preference order
+     */
+    public @NotNull List<JavaInstallation> getByType(@NotNull JavaType type) {
+        return byType.get(type);
+    }
+
+    /**
+     * Returns all installations of the given major version
+     *
+     * @param major major version, e.g. 17
+     * @return installations of the given major version, in preference order
+     */
+    public @NotNull List<JavaInstallation> getByMajor(int major) {
+        return byMajor.getOrDefault(major, Collections.emptyList());
+    }
+
+    /**
+     * Returns all installations of the given major version and type
+     *
+     * @param major major version, e.g. 17
+     * @param type  JDK or JRE
+     * @return installations of the given major version and type, in preference order
+     */
+    public @NotNull List<JavaInstallation> getByMajor(int major, @NotNull JavaType type) {
+        return byTypeAndMajor.get(type).getOrDefault(major, Collections.emptyList());
+    }
+
+    /**
+     * Returns all installations whose major version is between the given ones
+     *
+     * @param minMajor lowest major version, inclusive
+     * @param maxMajor highest major version, inclusive
+     * @return matching installations, in preference order
+     */
+    public @NotNull List<JavaInstallation> findAll(int minMajor, int maxMajor) {
+        return flatten(range(byMajor, minMajor, maxMajor));
+    }
+
+    /**
+     * Returns all installations of the given type whose major version is between the given ones
+     *
+     * @param minMajor lowest major version, inclusive
+     * @param maxMajor highest major version, inclusive
+     * @param type     JDK or JRE
+     * @return matching installations, in preference order
+     */
+    public @NotNull List<JavaInstallation> findAll(int minMajor, int maxMajor, @NotNull JavaType type) {
+        return flatten(range(byTypeAndMajor.get(type), minMajor, maxMajor));
+    }
+
+    /**
+     * Returns the best installation of the given major version
+     *
+     * @param major major version, e.g. 17
+     * @return the first installation in preference order, or an empty optional
+     */
+    public @NotNull Optional<JavaInstallation> findBest(int major) {
+        return first(getByMajor(major));
+    }
+
+    /**
+     * Returns the best installation of the given major version and type
+     *
+     * @param major major version, e.g. 17
+     * @param type  JDK or JRE
+     * @return the first installation in preference order, or an empty optional
+     */
+    public @NotNull Optional<JavaInstallation> findBest(int major, @NotNull JavaType type) {
+        return first(getByMajor(major, type));
+    }
+
+    /**
+     * Returns the best installation whose major version is between the given ones, i.e. the newest one
+     *
+     * @param minMajor lowest major version, inclusive
+     * @param maxMajor highest major version, inclusive
+     * @return the first installation in preference order, or an empty optional
+     */
+    public @NotNull Optional<JavaInstallation> findBest(int minMajor, int maxMajor) {
+        return firstOfRange(byMajor, minMajor, maxMajor);
+    }
+
+    /**
+     * Returns the best installation of the given type whose major version is between the given ones, i.e. the newest one
+     *
+     * @param minMajor lowest major version, inclusive
+     * @param maxMajor highest major version, inclusive
+     * @param type     JDK or JRE
+     * @return the first installation in preference order, or an empty optional
+     */
+    public @NotNull Optional<JavaInstallation> findBest(int minMajor, int maxMajor, @NotNull JavaType type) {
+        return firstOfRange(byTypeAndMajor.get(type), minMajor, maxMajor);
+    }
+
+    private static @NotNull NavigableMap<Integer, List<JavaInstallation>> range(@NotNull NavigableMap<Integer, List<JavaInstallation>> map, int minMajor, int maxMajor) {
+        if (minMajor > maxMajor) {
+            return Collections.emptyNavigableMap();
+        }
+        return map.subMap(minMajor, true, maxMajor, true).descendingMap();
+    }
+
+    private static @NotNull Optional<JavaInstallation> firstOfRange(@NotNull NavigableMap<Integer, List<JavaInstallation>> map, int minMajor, int maxMajor) {
+        Map.Entry<Integer, List<JavaInstallation>> newest = range(map, minMajor, maxMajor).firstEntry();
+        return newest == null ? Optional.empty() : first(newest.getValue());
+    }
+
+    private static @NotNull List<JavaInstallation> flatten(@NotNull NavigableMap<Integer, List<JavaInstallation>> groups) {
+        List<JavaInstallation> result = new ArrayList<>();
+        for (List<JavaInstallation> group : groups.values()) {
+            result.addAll(group);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static @NotNull Optional<JavaInstallation> first(@NotNull List<JavaInstallation> installations) {
+        return installations.isEmpty() ? Optional.empty() : Optional.of(installations.get(0));
+    }
+
+    public String toString() {
+        return "JavaInstallationIndex(installations=" + this.getAll() + ")";
+    }
+}
@@ -0,0 +1,56 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives Java installations as soon as they are found, see {@link JavaFinder#findInstallationsAsync(JavaInstallationSubscriber)}.
+ * The methods of a subscriber are never called concurrently, but they might be called from different threads.
+ */
+public interface JavaInstallationSubscriber {
+
+    /**
+     * Called for every Java installation as soon as its version has been detected. Installations are not sorted.
+     *
+     * @param installation the found Java installation
+     */
+    void onInstallation(@NotNull JavaInstallation installation);
+
+    /**
+     * Called once after all installations have been delivered
+     */
+    default void onComplete() {
+
+    }
+
+    /**
+     * Called once if the search failed. No other methods will be called afterwards.
+     *
+     * @param error the reason why the search failed
+     */
+    default void onError(@NotNull Throwable error) {
+
+    }
+}
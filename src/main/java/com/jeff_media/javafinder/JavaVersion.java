@@ -25,42 +25,57 @@ package com.jeff_media.javafinder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
- * Parses the output of java -version according to https://openjdk.org/jeps/223
+ * Parses the output of java -version or the release file of a Java installation according to https://openjdk.org/jeps/223
+ * <p>
+ * Versions are ordered by a precomputed key that packs major, minor and security version, whether it's a GA release,
+ * and the build number into a single long, so comparing and hashing is cheap even for large collections.
  */
 public class JavaVersion implements Comparable<JavaVersion> {
 
-    private static final Pattern VERSION_PATTERN = Pattern.compile("(?<major>[0-9]+)([.](?<minor>[0-9]+))?([.](?<security>[0-9]+))?(-(?<prerelease>[a-zA-Z0-9]+))?");
-    private static final Pattern PRE_9_VERSION_PATTERN = Pattern.compile("1[.](?<major>[0-9]+)([.](?<minor>[0-9]+))?(_(?<security>[0-9]+)?)?(-(?<prerelease>[a-zA-Z0-9]+))?");
+    private static final int NOT_SET = -1;
 
     private final int major;
     private final int minor;
-    @Nullable private final String security;
+    private final int security;
+    private final int build;
     @Nullable private final String preRelease;
+    private final long orderingKey;
 
-    private final List<String> javaVersionOutput;
+    @NotNull private final List<String> javaVersionOutput;
     @NotNull private final String shortVersion;
     @NotNull private final String fullVersion;
+    @Nullable private final String implementor;
+    @Nullable private final String architecture;
 
-    private JavaVersion(int major,
-                        int minor,
-                        @Nullable String security,
-                        @Nullable String preRelease,
-                        List<String> javaVersionOutput,
-                        @NotNull String shortVersion,
-                        @NotNull String fullVersion) {
+    JavaVersion(int major,
+                int minor,
+                int security,
+                int build,
+                @Nullable String preRelease,
+                @NotNull List<String> javaVersionOutput,
+                @NotNull String shortVersion,
+                @NotNull String fullVersion,
+                @Nullable String implementor,
+                @Nullable String architecture) {
         this.major = major;
         this.minor = minor;
         this.security = security;
+        this.build = build;
         this.preRelease = preRelease;
+        this.orderingKey = orderingKey(major, minor, security, preRelease == null, build);
         this.javaVersionOutput = javaVersionOutput;
         this.shortVersion = shortVersion;
         this.fullVersion = fullVersion;
+        this.implementor = implementor;
+        this.architecture = architecture;
     }
 
     /**
@@ -70,52 +85,217 @@ public class JavaVersion implements Comparable<JavaVersion> {
      * @return JavaVersion object
      */
     public static JavaVersion fromJavaVersionOutput(@NotNull List<String> javaVersionOutput) {
-        javaVersionOutput.removeIf(line -> line.startsWith("Picked up "));
-        List<String> output = Collections.unmodifiableList(javaVersionOutput);
+        return fromJavaVersionOutput(javaVersionOutput, true);
+    }
+
+    /**
+     * Creates a JavaVersion object from the output of {@code java -version}. Lines that don't belong to the version,
+     * like "Picked up JAVA_TOOL_OPTIONS" or VM warnings, are skipped.
+     *
+     * @param retainOutput whether {@link #getJavaVersionOutput()} should return the output, or an empty list
+     */
+    static JavaVersion fromJavaVersionOutput(@NotNull List<String> javaVersionOutput, boolean retainOutput) {
+        String shortVersion = null;
+        String fullVersion = null;
+        List<String> output = retainOutput ? new ArrayList<>(javaVersionOutput.size()) : Collections.<String>emptyList();
+        for (String line : javaVersionOutput) {
+            if (line.startsWith("Picked up ")) {
+                continue;
+            }
+            if (retainOutput) {
+                output.add(line);
+            }
+            if (shortVersion == null) {
+                shortVersion = between(line, " version \"", '"');
+            } else if (fullVersion == null) {
+                fullVersion = between(line, "build ", ')');
+            }
+        }
+        if (shortVersion == null || fullVersion == null) {
+            throw new IllegalArgumentException("Could not find version in output: " + javaVersionOutput);
+        }
 
-        String shortVersion = output.get(0).split("\"")[1];
-        String fullVersion = output.get(1).split("build ")[1].split("\\)")[0];
+        return parse(shortVersion, fullVersion, retainOutput ? Collections.unmodifiableList(output) : output, null, null);
+    }
+
+    /**
+     * Returns the text between the given prefix and the next occurrence of the given end character, or null if the
+     * line doesn't contain both
+     */
+    private static @Nullable String between(@NotNull String line, @NotNull String prefix, char end) {
+        int start = line.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        int endIndex = line.indexOf(end, start);
+        if (endIndex < 0) {
+            return null;
+        }
+        return line.substring(start, endIndex);
+    }
 
-        Pattern pattern = !fullVersion.startsWith("1.") ? VERSION_PATTERN : PRE_9_VERSION_PATTERN;
-        Matcher matcher = pattern.matcher(fullVersion);
-        if (!matcher.find()) {
+    /**
+     * Creates a JavaVersion object from the {@code release} file of a Java installation, without having to run
+     * {@code java -version}. The returned object's {@link #getJavaVersionOutput()} will be empty.
+     *
+     * @param releaseFile the {@code release} file, usually located in the Java home directory
+     * @return JavaVersion object
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file doesn't contain a parseable JAVA_VERSION
+     */
+    public static JavaVersion fromReleaseFile(@NotNull File releaseFile) throws IOException {
+        return fromReleaseProperties(ReleaseFile.read(releaseFile));
+    }
+
+    static JavaVersion fromReleaseProperties(@NotNull Map<String, String> properties) {
+        String shortVersion = properties.get(ReleaseFile.JAVA_VERSION);
+        if (shortVersion == null || shortVersion.isEmpty()) {
+            throw new IllegalArgumentException("Release file doesn't contain " + ReleaseFile.JAVA_VERSION);
+        }
+
+        // Java 8 release files don't contain JAVA_RUNTIME_VERSION, but most of them contain FULL_VERSION
+        String fullVersion = properties.get(ReleaseFile.JAVA_RUNTIME_VERSION);
+        if (fullVersion == null || fullVersion.isEmpty()) {
+            fullVersion = properties.get(ReleaseFile.FULL_VERSION);
+        }
+        if (fullVersion == null || fullVersion.isEmpty()) {
+            fullVersion = shortVersion;
+        }
+
+        return parse(shortVersion, fullVersion, Collections.<String>emptyList(),
+                properties.get(ReleaseFile.IMPLEMENTOR), properties.get(ReleaseFile.OS_ARCH));
+    }
+
+    /**
+     * Parses a full version string, either in the pre-9 format ({@code 1.8.0_392-b08}) or in the format defined by
+     * JEP 223 ({@code 17.0.9+9}, {@code 21-ea+35}, {@code 17.0.16+8-Debian-1deb12u1}).
+     */
+    private static JavaVersion parse(@NotNull String shortVersion,
+                                     @NotNull String fullVersion,
+                                     @NotNull List<String> javaVersionOutput,
+                                     @Nullable String implementor,
+                                     @Nullable String architecture) {
+        int length = fullVersion.length();
+        boolean pre9 = fullVersion.startsWith("1.");
+        int position = pre9 ? 2 : 0;
+
+        int end = skipDigits(fullVersion, position);
+        if (end == position) {
             throw new IllegalArgumentException("Could not parse version: " + fullVersion);
         }
-        String majorStr = matcher.group("major");
-        String minorStr = matcher.group("minor");
+        int major = parseInt(fullVersion, position, end);
+        position = end;
 
-        int major = Integer.parseInt(majorStr);
         int minor = 0;
-        if (minorStr != null) {
-            try {
-                minor = Integer.parseInt(minorStr);
-            } catch (NumberFormatException e) {
-                // ignore
+        if (position < length && fullVersion.charAt(position) == '.') {
+            end = skipDigits(fullVersion, position + 1);
+            if (end > position + 1) {
+                minor = parseInt(fullVersion, position + 1, end);
+                position = end;
             }
         }
 
-        String security = matcher.group("security");
-        String preRelease = matcher.group("prerelease");
+        int security = NOT_SET;
+        char securitySeparator = pre9 ? '_' : '.';
+        if (position < length && fullVersion.charAt(position) == securitySeparator) {
+            end = skipDigits(fullVersion, position + 1);
+            if (end > position + 1) {
+                security = parseInt(fullVersion, position + 1, end);
+                position = end;
+            }
+        }
 
-        return new JavaVersion(major, minor, security, preRelease, javaVersionOutput, shortVersion, fullVersion);
+        // Further version components like the patch version in 11.0.21.1 don't affect the ordering
+        while (!pre9 && position < length && fullVersion.charAt(position) == '.') {
+            position = skipDigits(fullVersion, position + 1);
+        }
+
+        String preRelease = null;
+        int build = 0;
+        if (pre9) {
+            // 1.8.0_392-b08, 1.8.0-ea-b08
+            while (position < length && fullVersion.charAt(position) == '-') {
+                int tokenEnd = skipAlphanumerics(fullVersion, position + 1);
+                if (tokenEnd > position + 2 && fullVersion.charAt(position + 1) == 'b' && skipDigits(fullVersion, position + 2) == tokenEnd) {
+                    build = parseInt(fullVersion, position + 2, tokenEnd);
+                } else if (tokenEnd > position + 1 && preRelease == null) {
+                    preRelease = fullVersion.substring(position + 1, tokenEnd);
+                }
+                position = tokenEnd;
+            }
+        } else {
+            // 21-ea+35, 17.0.9+9-LTS
+            if (position < length && fullVersion.charAt(position) == '-') {
+                end = skipAlphanumerics(fullVersion, position + 1);
+                if (end > position + 1) {
+                    preRelease = fullVersion.substring(position + 1, end);
+                }
+                position = end;
+            }
+            if (position < length && fullVersion.charAt(position) == '+') {
+                end = skipDigits(fullVersion, position + 1);
+                if (end > position + 1) {
+                    build = parseInt(fullVersion, position + 1, end);
+                }
+            }
+        }
+
+        return new JavaVersion(major, minor, security, build, preRelease, javaVersionOutput, shortVersion, fullVersion, implementor, architecture);
     }
 
-    private int compareOldBeforeNew(@NotNull final JavaVersion o) {
-        if (major != o.major) {
-            return Integer.compare(major, o.major);
+    private static int skipDigits(@NotNull String string, int position) {
+        while (position < string.length() && isDigit(string.charAt(position))) {
+            position++;
         }
-        if (minor != o.minor) {
-            return Integer.compare(minor, o.minor);
+        return position;
+    }
+
+    private static int skipAlphanumerics(@NotNull String string, int position) {
+        while (position < string.length()) {
+            char c = string.charAt(position);
+            if (!isDigit(c) && !(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                break;
+            }
+            position++;
         }
-        if (security != null && o.security != null) {
-            return security.compareTo(o.security);
+        return position;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Parses a non-negative number without creating a substring, saturating instead of overflowing
+     */
+    private static int parseInt(@NotNull String string, int start, int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            result = Math.min(Integer.MAX_VALUE, result * 10 + (string.charAt(i) - '0'));
         }
-        return 0;
+        return (int) result;
     }
 
+    /**
+     * Packs the parts of a version into one long that sorts like the version itself: 12 bits major, 12 bits minor,
+     * 16 bits security, 1 bit GA, 16 bits build. Values that don't fit are clamped.
+     */
+    private static long orderingKey(int major, int minor, int security, boolean ga, int build) {
+        return ((long) Math.min(major, 0xFFF) << 45)
+                | ((long) Math.min(minor, 0xFFF) << 33)
+                | ((long) Math.min(Math.max(security, 0), 0xFFFF) << 17)
+                | ((ga ? 1L : 0L) << 16)
+                | Math.min(build, 0xFFFF);
+    }
+
+    /**
+     * Sorts from newest to oldest. Versions are compared by major, minor and security version, then GA releases
+     * before pre-releases, and then by build number.
+     */
     @Override
     public int compareTo(@NotNull final JavaVersion o) {
-        return -compareOldBeforeNew(o);
+        return Long.compare(o.orderingKey, orderingKey);
     }
 
     /**
@@ -146,26 +326,41 @@ public class JavaVersion implements Comparable<JavaVersion> {
     }
 
     /**
-     * Returns the security version, e.g. 1 for Java 17.0.1
+     * Returns the security version, e.g. 1 for Java 17.0.1 or 392 for Java 1.8.0_392
      *
-     * @return security version
+     * @return security version, or null if the version doesn't contain one
      */
     @Nullable
     public String getSecurity() {
+        return this.security == NOT_SET ? null : String.valueOf(this.security);
+    }
+
+    int getSecurityNumber() {
         return this.security;
     }
 
     /**
-     * Returns the pre-release version. This method is private because it's unreliable.
+     * Returns the build number, e.g. 9 for Java 17.0.9+9 or 8 for Java 1.8.0_392-b08
+     *
+     * @return build number, or 0 if the version doesn't contain one
+     */
+    public int getBuild() {
+        return this.build;
+    }
+
+    /**
+     * Returns the pre-release version. This method is not public because it's unreliable.
      *
      * @return unreliable pre-release version
      */
-    private @Nullable String getPreRelease() {
+    @Nullable String getPreRelease() {
         return this.preRelease;
     }
 
     /**
-     * Returns the complete output of {@code java -version}
+     * Returns the complete output of {@code java -version}. This is empty if the version was read from the release
+     * file, or if it has been detected by a {@link JavaFinder} that doesn't retain the output, see
+     * {@link JavaFinderBuilder#retainVersionOutput(boolean)}.
      *
      * @return output of {@code java -version}
      */
@@ -191,31 +386,47 @@ public class JavaVersion implements Comparable<JavaVersion> {
         return this.fullVersion;
     }
 
+    /**
+     * Returns the implementor (vendor), e.g. "Eclipse Adoptium". This is only known if the version was read from the release file.
+     *
+     * @return implementor, or null if unknown
+     */
+    public @Nullable String getImplementor() {
+        return this.implementor;
+    }
+
+    /**
+     * Returns the operating system architecture this Java installation was built for, e.g. "x86_64" or "aarch64". This is only known if the version was read from the release file.
+     *
+     * @return architecture, or null if unknown
+     */
+    public @Nullable String getArchitecture() {
+        return this.architecture;
+    }
+
     public boolean equals(final Object o) {
         if (o == this) return true;
         if (!(o instanceof JavaVersion)) return false;
         final JavaVersion other = (JavaVersion) o;
         if (!other.canEqual(this)) return false;
+        if (this.orderingKey != other.orderingKey) return false;
         if (this.getMajor() != other.getMajor()) return false;
         if (this.getMinor() != other.getMinor()) return false;
-        final Object this$security = this.getSecurity();
-        final Object other$security = other.getSecurity();
-        if (this$security == null ? other$security != null : !this$security.equals(other$security)) return false;
+        if (this.security != other.security) return false;
+        if (this.getBuild() != other.getBuild()) return false;
         final Object this$preRelease = this.getPreRelease();
         final Object other$preRelease = other.getPreRelease();
         if (this$preRelease == null ? other$preRelease != null : !this$preRelease.equals(other$preRelease))
             return false;
-        final Object this$javaVersionOutput = this.getJavaVersionOutput();
-        final Object other$javaVersionOutput = other.getJavaVersionOutput();
-        if (this$javaVersionOutput == null ? other$javaVersionOutput != null : !this$javaVersionOutput.equals(other$javaVersionOutput))
-            return false;
-        final Object this$shortVersion = this.getShortVersion();
-        final Object other$shortVersion = other.getShortVersion();
-        if (this$shortVersion == null ? other$shortVersion != null : !this$shortVersion.equals(other$shortVersion))
+        if (!this.getShortVersion().equals(other.getShortVersion())) return false;
+        if (!this.getFullVersion().equals(other.getFullVersion())) return false;
+        final Object this$implementor = this.getImplementor();
+        final Object other$implementor = other.getImplementor();
+        if (this$implementor == null ? other$implementor != null : !this$implementor.equals(other$implementor))
             return false;
-        final Object this$fullVersion = this.getFullVersion();
-        final Object other$fullVersion = other.getFullVersion();
-        if (this$fullVersion == null ? other$fullVersion != null : !this$fullVersion.equals(other$fullVersion))
+        final Object this$architecture = this.getArchitecture();
+        final Object other$architecture = other.getArchitecture();
+        if (this$architecture == null ? other$architecture != null : !this$architecture.equals(other$architecture))
             return false;
         return true;
     }
@@ -224,25 +435,14 @@ public class JavaVersion implements Comparable<JavaVersion> {
         return other instanceof JavaVersion;
     }
 
+    /**
+     * Only depends on the precomputed ordering key, so it doesn't have to hash any strings
+     */
     public int hashCode() {
-        final int PRIME = 59;
-        int result = 1;
-        result = result * PRIME + this.getMajor();
-        result = result * PRIME + this.getMinor();
-        final Object $security = this.getSecurity();
-        result = result * PRIME + ($security == null ? 43 : $security.hashCode());
-        final Object $preRelease = this.getPreRelease();
-        result = result * PRIME + ($preRelease == null ? 43 : $preRelease.hashCode());
-        final Object $javaVersionOutput = this.getJavaVersionOutput();
-        result = result * PRIME + ($javaVersionOutput == null ? 43 : $javaVersionOutput.hashCode());
-        final Object $shortVersion = this.getShortVersion();
-        result = result * PRIME + ($shortVersion == null ? 43 : $shortVersion.hashCode());
-        final Object $fullVersion = this.getFullVersion();
-        result = result * PRIME + ($fullVersion == null ? 43 : $fullVersion.hashCode());
-        return result;
+        return Long.hashCode(orderingKey);
     }
 
     public String toString() {
-        return "JavaVersion(major=" + this.getMajor() + ", minor=" + this.getMinor() + ", security=" + this.getSecurity() + ", preRelease=" + this.getPreRelease() + ", javaVersionOutput=" + this.getJavaVersionOutput() + ", shortVersion=" + this.getShortVersion() + ", fullVersion=" + this.getFullVersion() + ")";
+        return "JavaVersion(major=" + this.getMajor() + ", minor=" + this.getMinor() + ", security=" + this.getSecurity() + ", build=" + this.getBuild() + ", preRelease=" + this.getPreRelease() + ", javaVersionOutput=" + this.getJavaVersionOutput() + ", shortVersion=" + this.getShortVersion() + ", fullVersion=" + this.getFullVersion() + ", implementor=" + this.getImplementor() + ", architecture=" + this.getArchitecture() + ")";
     }
 }
@@ -0,0 +1,223 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A Java installation whose version is only detected when it's needed. Paths and the type are known as soon as the
+ * installation has been found, so callers that only filter by those never have to run {@code java -version}.
+ * <p>
+ * The version is detected at most once, on first access, and shared by all threads. Use
+ * {@link #getProbeResultAsync()} or {@link JavaFinderBuilder#prefetchVersions(boolean)} to detect it in the background.
+ *
+ * @see JavaFinder#findLazyInstallationsAsync()
+ */
+public class LazyJavaInstallation {
+
+    private final @NotNull File homeDirectory;
+    private final @NotNull File javaExecutable;
+    private final @Nullable File javacExecutable;
+    private final @NotNull JavaType type;
+    private final @NotNull Set<File> aliases;
+    private final boolean isCurrentJavaVersion;
+
+    private final @NotNull Supplier<ProbeResult> versionDetector;
+    private final @NotNull Executor executor;
+    private final @NotNull AtomicReference<CompletableFuture<ProbeResult>> probeResult = new AtomicReference<>();
+
+    /**
+     * @param knownVersion the version if it's already known, e.g. from the registry
+     * @param versionDetector detects the version. Called at most once.
+     * @param executor used to detect the version in the background
+     */
+    LazyJavaInstallation(@NotNull File homeDirectory,
+                         @NotNull File javaExecutable,
+                         @Nullable File javacExecutable,
+                         @NotNull JavaType type,
+                         @NotNull Set<File> aliases,
+                         @Nullable JavaVersion knownVersion,
+                         @NotNull Supplier<ProbeResult> versionDetector,
+                         @NotNull Executor executor) {
+        this.homeDirectory = homeDirectory;
+        this.javaExecutable = javaExecutable;
+        this.javacExecutable = javacExecutable;
+        this.type = type;
+        this.aliases = aliases;
+        this.versionDetector = versionDetector;
+        this.executor = executor;
+        this.isCurrentJavaVersion = JavaInstallation.isCurrentJavaHome(homeDirectory);
+        if (knownVersion != null) {
+            probeResult.set(CompletableFuture.completedFuture(ProbeResult.parsed(javaExecutable, knownVersion)));
+        }
+    }
+
+    /**
+     * Returns the home directory of this Java installation
+     *
+     * @return home directory
+     */
+    public @NotNull File getHomeDirectory() {
+        return homeDirectory;
+    }
+
+    /**
+     * Returns the executable of this Java installation
+     *
+     * @return executable
+     */
+    public @NotNull File getJavaExecutable() {
+        return javaExecutable;
+    }
+
+    /**
+     * Returns the javac executable of this Java installation if it's a JDK, or null if it's a JRE
+     *
+     * @return javac executable, or null if this is a JRE
+     */
+    public @Nullable File getJavacExecutable() {
+        return javacExecutable;
+    }
+
+    /**
+     * Returns the type of this Java installation
+     *
+     * @return type
+     */
+    public @NotNull JavaType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the other directories this Java installation has been found through
+     *
+     * @return other home directories of this installation
+     * @see JavaInstallation#getAliases()
+     */
+    public @NotNull Set<File> getAliases() {
+        return Collections.unmodifiableSet(aliases);
+    }
+
+    /**
+     * Returns true if this Java installation is the same as the one currently being used
+     *
+     * @return true if this is the current Java installation
+     */
+    public boolean isCurrentJavaVersion() {
+        return isCurrentJavaVersion;
+    }
+
+    /**
+     * Returns whether the version has already been detected, so that {@link #getVersion()} won't block
+     *
+     * @return whether the version has already been detected
+     */
+    public boolean isVersionDetected() {
+        CompletableFuture<ProbeResult> result = probeResult.get();
+        return result != null && result.isDone();
+    }
+
+    /**
+     * Returns the version, detecting it on the calling thread if this is the first access. If another thread is
+     * already detecting it, waits for that thread instead.
+     *
+     * @return version, or an empty optional if it couldn't be detected
+     */
+    public @NotNull Optional<JavaVersion> getVersion() {
+        return Optional.ofNullable(getProbeResult().getVersion());
+    }
+
+    /**
+     * Returns the result of detecting the version, detecting it on the calling thread if this is the first access
+     *
+     * @return probe result
+     */
+    public @NotNull ProbeResult getProbeResult() {
+        return detect(false).join();
+    }
+
+    /**
+     * Starts detecting the version in the background, unless that has already happened. If the executor rejects the
+     * detection, e.g. because it has been shut down, the future completes exceptionally and the next access tries again.
+     *
+     * @return future containing the probe result
+     */
+    public @NotNull CompletableFuture<ProbeResult> getProbeResultAsync() {
+        return detect(true);
+    }
+
+    /**
+     * Detects the version if necessary and returns this installation with its version
+     *
+     * @return the installation, or an empty optional if the version couldn't be detected
+     */
+    public @NotNull Optional<JavaInstallation> toJavaInstallation() {
+        return getVersion().map(version -> new JavaInstallation(homeDirectory, javaExecutable, javacExecutable, type, version, aliases));
+    }
+
+    private @NotNull CompletableFuture<ProbeResult> detect(boolean async) {
+        CompletableFuture<ProbeResult> existing = probeResult.get();
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<ProbeResult> result = new CompletableFuture<>();
+        if (!probeResult.compareAndSet(null, result)) {
+            return probeResult.get();
+        }
+        Runnable detection = () -> {
+            try {
+                result.complete(versionDetector.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        };
+        if (async) {
+            try {
+                executor.execute(detection);
+            } catch (RejectedExecutionException e) {
+                // Let the next access try again instead of waiting for a detection that never runs
+                probeResult.compareAndSet(result, null);
+                result.completeExceptionally(e);
+            }
+        } else {
+            detection.run();
+        }
+        return result;
+    }
+
+    public String toString() {
+        return "LazyJavaInstallation(homeDirectory=" + this.getHomeDirectory() + ", executable=" + this.getJavaExecutable() + ", type=" + this.getType() + ", isCurrentJavaVersion=" + this.isCurrentJavaVersion() + ", versionDetected=" + this.isVersionDetected() + ", aliases=" + this.getAliases() + ")";
+    }
+}
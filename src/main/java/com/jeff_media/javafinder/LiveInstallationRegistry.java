@@ -0,0 +1,392 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps an up-to-date list of the Java installations found by a {@link JavaFinder}. Instead of periodically repeating
+ * the whole search, the searched directories are watched using a {@link WatchService}, and only the subtree affected
+ * by a change is searched again.
+ * <p>
+ * Changes are processed after a short quiet period, so that e.g. extracting an archive results in one update instead of
+ * hundreds. Directories whose installations are known from package metadata, like /usr/lib/jvm, aren't crawled but
+ * watched as well, so installing or removing a package is noticed, too. Note that a {@link WatchService} is
+ * best-effort: on some platforms it polls, and on network file systems it might not report changes at all. Use
+ * {@link #refresh()} to force a full search.
+ */
+public class LiveInstallationRegistry implements Closeable {
+
+    /**
+     * Gets notified when installations are added to or removed from a {@link LiveInstallationRegistry}. Listeners are
+     * called on the registry's watcher thread for changes on disk, and on the calling thread during {@link #refresh()}.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a new installation has been found, or an existing one has changed
+         *
+         * @param installation the new installation
+         */
+        default void onInstallationAdded(@NotNull JavaInstallation installation) {
+
+        }
+
+        /**
+         * Called when an installation has been removed, or an existing one has changed
+         *
+         * @param installation the removed installation
+         */
+        default void onInstallationRemoved(@NotNull JavaInstallation installation) {
+
+        }
+    }
+
+    private static final long QUIET_PERIOD_MILLIS = 500;
+
+    private final @NotNull JavaFinder finder;
+    private final @NotNull WatchService watchService;
+    private final @NotNull Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final @NotNull Map<File, JavaInstallation> installations = new ConcurrentHashMap<>();
+    private final @NotNull List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final @NotNull Thread watcherThread;
+    private volatile @NotNull JavaInstallationIndex snapshot = JavaInstallationIndex.of(Collections.emptyList());
+    private volatile boolean closed = false;
+
+    private LiveInstallationRegistry(@NotNull JavaFinder finder) throws IOException {
+        this.finder = finder;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.watcherThread = new Thread(this::watch, "JavaFinder live registry");
+        this.watcherThread.setDaemon(true);
+    }
+
+    /**
+     * Searches all directories of the given JavaFinder, and then keeps watching them for changes until {@link #close()}
+     * is called.
+     *
+     * @param finder the JavaFinder whose search directories should be watched
+     * @return the running registry
+     * @throws IOException if the watch service couldn't be created
+     */
+    public static @NotNull LiveInstallationRegistry start(@NotNull JavaFinder finder) throws IOException {
+        LiveInstallationRegistry registry = new LiveInstallationRegistry(finder);
+        registry.refresh();
+        registry.watcherThread.start();
+        return registry;
+    }
+
+    /**
+     * Returns the current installations, sorted from newest to oldest, and JDKs before JREs of the same version
+     *
+     * @return immutable snapshot of the current installations
+     */
+    public @NotNull List<JavaInstallation> getInstallations() {
+        return snapshot.getAll();
+    }
+
+    /**
+     * Returns an index of the current installations for lookups by major version and type
+     *
+     * @return immutable index of the current installations
+     */
+    public @NotNull JavaInstallationIndex getIndex() {
+        return snapshot;
+    }
+
+    /**
+     * Adds a listener that gets notified about added and removed installations
+     *
+     * @param listener listener
+     */
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener
+     *
+     * @param listener listener
+     */
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Searches again like {@link JavaFinder#scanAsync()}, regardless of whether a change has been reported. Blocks
+     * until the search has finished.
+     */
+    public synchronized void refresh() {
+        ScanContext context = newScanContext();
+        boolean finished = finder.searchAsync(context).join();
+        context.finish();
+        update(context, null, finished && context.getAbandonedRoots().isEmpty());
+    }
+
+    /**
+     * Stops watching for changes. The last snapshot stays available.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcherThread.interrupt();
+        watchService.close();
+    }
+
+    private void watch() {
+        Set<Path> dirty = new HashSet<>();
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = dirty.isEmpty() ? watchService.take() : watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (key == null) {
+                // Nothing happened for a while, so it's time to process the collected changes
+                processChanges(dirty);
+                dirty.clear();
+                continue;
+            }
+
+            Path directory = watchedDirectories.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    dirty.add(getAffectedPath(directory, event));
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the path that has to be searched again because of the given event
+     */
+    private @NotNull Path getAffectedPath(@NotNull Path directory, @NotNull WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW || installations.containsKey(directory.toFile())) {
+            // Events got lost, or something inside a Java home has changed
+            return directory;
+        }
+        if (JavaHomeLayout.isBinDirectory(directory.getFileName().toString()) && directory.getParent() != null) {
+            // The parent directory might just have become a Java home
+            return directory.getParent();
+        }
+        Path child = directory.resolve((Path) event.context());
+        String name = child.getFileName().toString();
+        if (JavaHomeLayout.isBinDirectory(name) || ReleaseFile.FILE_NAME.equals(name)) {
+            // The directory might just have become a Java home
+            return directory;
+        }
+        return child;
+    }
+
+    private synchronized void processChanges(@NotNull Set<Path> dirty) {
+        for (Path path : dirty) {
+            if (!hasAncestorIn(path, dirty)) {
+                rescan(path);
+            }
+        }
+    }
+
+    private static boolean hasAncestorIn(@NotNull Path path, @NotNull Set<Path> paths) {
+        for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+            if (paths.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private @NotNull ScanContext newScanContext() {
+        return new ScanContext(finder, installation -> watch(installation.getHomeDirectory().toPath()), this::watchIncludingBin);
+    }
+
+    /**
+     * Searches the given subtree again, registers watches for all its directories, and updates the installations
+     */
+    private void rescan(@NotNull Path subtree) {
+        ScanContext context = newScanContext();
+        new DirectoryCrawler(subtree.toFile(), OperatingSystem.CURRENT, context, false, getDepth(subtree)).crawl();
+        for (List<File> deferred = context.pollDeferredDirectories(); !deferred.isEmpty(); deferred = context.pollDeferredDirectories()) {
+            for (File directory : deferred) {
+                new DirectoryCrawler(directory, OperatingSystem.CURRENT, context, true).crawl();
+            }
+        }
+        context.whenProbesFinished().join();
+        context.finish();
+        update(context, subtree, context.getAbandonedRoots().isEmpty());
+    }
+
+    /**
+     * Returns how deep the given directory is below the closest search directory containing it, or 0 if it's not in
+     * any search directory, e.g. because it's a discovered Java home
+     */
+    private int getDepth(@NotNull Path directory) {
+        int depth = Integer.MAX_VALUE;
+        for (File searchDirectory : finder.getSearchDirectories()) {
+            Path root = searchDirectory.toPath();
+            if (directory.startsWith(root)) {
+                depth = Math.min(depth, directory.getNameCount() - root.getNameCount());
+            }
+        }
+        return depth == Integer.MAX_VALUE ? 0 : depth;
+    }
+
+    /**
+     * Replaces the installations inside the given subtree, or all installations if it's null, with the ones found by
+     * the given context, and notifies the listeners. Installations and aliases that haven't been found again are only
+     * removed if they have been searched completely.
+     */
+    private void update(@NotNull ScanContext context, @Nullable Path subtree, boolean complete) {
+        Map<File, JavaInstallation> found = new HashMap<>();
+        for (JavaInstallation installation : context.getInstallations()) {
+            found.put(installation.getHomeDirectory(), installation);
+        }
+
+        List<JavaInstallation> removed = new ArrayList<>();
+        List<JavaInstallation> added = new ArrayList<>();
+        for (JavaInstallation existing : installations.values()) {
+            if (subtree != null && !isWithin(existing, subtree)) {
+                continue;
+            }
+            File home = existing.getHomeDirectory();
+            Set<File> aliases = new HashSet<>();
+            for (File alias : existing.getAliases()) {
+                if (!isSearched(alias, subtree, complete)) {
+                    aliases.add(alias);
+                }
+            }
+            JavaInstallation current = found.remove(home);
+            if (current == null) {
+                if (isSearched(home, subtree, complete)) {
+                    installations.remove(home);
+                    removed.add(existing);
+                } else {
+                    // Only an alias inside of the subtree is gone
+                    installations.put(home, withAliases(existing, aliases));
+                }
+                continue;
+            }
+            aliases.addAll(current.getAliases());
+            current = withAliases(current, aliases);
+            installations.put(home, current);
+            if (!existing.equals(current)) {
+                removed.add(existing);
+                added.add(current);
+            }
+        }
+        for (JavaInstallation installation : found.values()) {
+            JavaInstallation existing = installations.get(installation.getHomeDirectory());
+            if (existing == null) {
+                installations.put(installation.getHomeDirectory(), installation);
+                added.add(installation);
+            } else {
+                // Found through a new alias inside of the subtree, but its home directory is somewhere else
+                Set<File> aliases = new HashSet<>(existing.getAliases());
+                aliases.addAll(installation.getAliases());
+                installations.put(existing.getHomeDirectory(), withAliases(existing, aliases));
+            }
+        }
+
+        snapshot = JavaInstallationIndex.of(installations.values());
+        for (Listener listener : listeners) {
+            removed.forEach(listener::onInstallationRemoved);
+            added.forEach(listener::onInstallationAdded);
+        }
+    }
+
+    /**
+     * Whether the given path has been searched completely, so that whatever hasn't been found there is gone
+     */
+    private static boolean isSearched(@NotNull File path, @Nullable Path subtree, boolean complete) {
+        return complete && (subtree == null || path.toPath().startsWith(subtree));
+    }
+
+    /**
+     * Returns the given installation with the given aliases, or the installation itself if it already has them
+     */
+    private static @NotNull JavaInstallation withAliases(@NotNull JavaInstallation installation, @NotNull Set<File> aliases) {
+        if (installation.getAliases().equals(aliases)) {
+            return installation;
+        }
+        Set<File> concurrentAliases = ConcurrentHashMap.newKeySet();
+        concurrentAliases.addAll(aliases);
+        return new JavaInstallation(installation.getHomeDirectory(), installation.getJavaExecutable(), installation.getJavacExecutable(),
+                installation.getType(), installation.getVersion(), concurrentAliases);
+    }
+
+    /**
+     * Whether the installation has been found inside the given subtree, either at its real home directory or through
+     * one of its aliases
+     */
+    private static boolean isWithin(@NotNull JavaInstallation installation, @NotNull Path subtree) {
+        if (installation.getHomeDirectory().toPath().startsWith(subtree)) {
+            return true;
+        }
+        for (File alias : installation.getAliases()) {
+            if (alias.toPath().startsWith(subtree)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Directories that aren't a Java home yet might become one, e.g. while an archive is being extracted. This is only
+     * noticed if their bin directory is watched, too.
+     */
+    private void watchIncludingBin(@NotNull Path directory) {
+        watch(directory);
+        Path bin = directory.resolve(JavaHomeLayout.BIN);
+        if (Files.isDirectory(bin)) {
+            watch(bin);
+        }
+    }
+
+    private void watch(@NotNull Path directory) {
+        if (closed) {
+            return;
+        }
+        try {
+            // Registering an already watched directory returns the existing key
+            watchedDirectories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+        } catch (IOException | ClosedWatchServiceException ignored) {
+            // Can't watch this directory - changes will only be noticed by refresh()
+        }
+    }
+}
@@ -1,22 +1,188 @@
 package com.jeff_media.javafinder;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * JavaFinder main class
+ * <p>
+ * Without arguments, it searches for installations and prints them. With {@code --daemon}, it keeps running and
+ * answers queries from other invocations using {@code --query <command>}, see {@link Daemon}. Both accept
+ * {@code --port <port>}, before or after the command. With {@code --archive <file>...}, it lists the installations inside of the given archives
+ * instead, see {@link ArchiveScanner}.
  */
 class Main {
 
-    public static void main(String[] args) {
-        JavaFinder finder = JavaFinder.builder().build();
+    private static final String USAGE = "Usage: [--stats] | --daemon [--port <port>] | --query <command> [<argument>...] [--port <port>]"
+            + " | --archive <file>...";
+    // EX_USAGE from sysexits.h, to tell usage errors apart from failed queries
+    private static final int USAGE_ERROR = 64;
+
+    public static void main(String[] args) throws IOException {
+        int port = Daemon.DEFAULT_PORT;
+        boolean daemon = false;
+        boolean printStatistics = false;
+        List<String> query = null;
+        List<String> archives = null;
+        // Receives the words following --query or --archive, up to the next option
+        List<String> operands = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    if (i + 1 >= args.length) {
+                        usageError("--port needs a port number");
+                        return;
+                    }
+                    port = parsePort(args[++i]);
+                    operands = null;
+                    break;
+                case "--query":
+                    query = operands = new ArrayList<>();
+                    break;
+                case "--archive":
+                    archives = operands = new ArrayList<>();
+                    break;
+                case "--daemon":
+                    daemon = true;
+                    operands = null;
+                    break;
+                case "--stats":
+                    printStatistics = true;
+                    operands = null;
+                    break;
+                default:
+                    if (operands == null) {
+                        usageError("Unknown argument: " + args[i]);
+                        return;
+                    }
+                    operands.add(args[i]);
+            }
+        }
+
+        if (query != null) {
+            if (query.isEmpty()) {
+                usageError("--query needs a command: list, best or rescan");
+                return;
+            }
+            query(port, String.join(" ", query));
+            return;
+        }
+        if (daemon) {
+            runDaemon(port);
+            return;
+        }
+        if (archives != null) {
+            scanArchives(archives);
+            return;
+        }
+
+        AtomicReference<ScanStatistics> statistics = new AtomicReference<>();
+        JavaFinderBuilder builder = JavaFinder.builder();
+        if (printStatistics) {
+            builder.statisticsListener(statistics::set);
+        }
+        JavaFinder finder = builder.build();
         List<JavaInstallation> installations = finder.findInstallationsAsync().join();
 
         for (JavaInstallation java : installations) {
-            print(java);
+            print(System.out, java);
+        }
+
+        if (printStatistics && statistics.get() != null) {
+            print(statistics.get());
+        }
+    }
+
+    private static int parsePort(String port) {
+        try {
+            int number = Integer.parseInt(port);
+            if (number >= 1 && number <= 65535) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+
+        }
+        usageError("Invalid port: " + port);
+        return -1;
+    }
+
+    private static void usageError(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(USAGE_ERROR);
+    }
+
+    /**
+     * Thin client: only sends the command to the daemon, without loading anything needed for searching
+     */
+    private static void query(int port, String command) throws IOException {
+        boolean success;
+        try {
+            success = Daemon.query(port, command, System.out);
+        } catch (ConnectException e) {
+            System.err.println("No JavaFinder daemon is running on port " + port + ". Start one using --daemon");
+            System.exit(2);
+            return;
+        }
+        if (!success) {
+            System.exit(1);
+        }
+    }
+
+    private static void runDaemon(int port) throws IOException {
+        Daemon daemon = Daemon.start(JavaFinder.builder().build(), port, Daemon.DEFAULT_REFRESH_INTERVAL);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException ignored) {
+
+            }
+        }));
+        System.out.println("JavaFinder daemon listening on port " + port);
+        daemon.serve();
+    }
+
+    private static void scanArchives(List<String> archives) throws IOException {
+        for (String archive : archives) {
+            for (ArchivedJavaInstallation java : ArchiveScanner.scan(new File(archive))) {
+                System.out.println("  " + java.getType() + " " + java.getVersion().getMajor() + " (" + java.getVersion().getFullVersion() + ") at "
+                        + archive + ArchivedJavaInstallation.NESTED_ARCHIVE_SEPARATOR + java.getHomePath());
+            }
+        }
+    }
+
+    static void print(PrintStream out, JavaInstallation java) {
+        out.println((java.isCurrentJavaVersion() ? "* " : "  ") + java.getType() + " " + java.getVersion().getMajor() + " (" + java.getVersion().getFullVersion() + ") at " + java.getHomeDirectory().getAbsolutePath());
+        for (File alias : java.getAliases()) {
+            out.println("      also at " + alias.getAbsolutePath());
+        }
+    }
+
+    private static void print(ScanStatistics statistics) {
+        System.out.println();
+        System.out.println("Search took " + millis(statistics.getTotalWallTime()));
+        System.out.println("  Directories listed: " + statistics.getDirectoriesListed());
+        System.out.println("  Stat calls:         " + statistics.getStatCalls());
+        System.out.println("  Candidates found:   " + statistics.getCandidatesFound());
+        System.out.println("  Probes spawned:     " + statistics.getProbesSpawned() + " (" + statistics.getProbesFailed() + " failed, " + statistics.getProbesTimedOut() + " timed out)");
+        System.out.println("  Probe latency:      p50 " + millis(statistics.getProbeLatencyPercentile(50))
+                + ", p90 " + millis(statistics.getProbeLatencyPercentile(90))
+                + ", p99 " + millis(statistics.getProbeLatencyPercentile(99))
+                + ", max " + millis(statistics.getProbeLatencyPercentile(100)));
+        System.out.println("  Time per search directory:");
+        for (Map.Entry<File, Duration> root : statistics.getRootWallTimes().entrySet()) {
+            System.out.println("    " + millis(root.getValue()) + " " + root.getKey().getAbsolutePath());
         }
     }
 
-    private static void print(JavaInstallation java) {
-        System.out.println((java.isCurrentJavaVersion() ? "* " : "  ") + java.getType() + " " + java.getVersion().getMajor() + " (" + java.getVersion().getFullVersion() + ") at " + java.getHomeDirectory().getAbsolutePath());
+    private static String millis(Duration duration) {
+        return duration.toMillis() + " ms";
     }
 }
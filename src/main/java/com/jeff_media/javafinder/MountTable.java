@@ -0,0 +1,195 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Knows which file system a path is on, to tell remote and FUSE file systems apart from local ones. See
+ * {@link SlowFileSystemPolicy}.
+ * <p>
+ * On Linux, the mount points are read from /proc/self/mountinfo, which never touches the mounted file systems
+ * themselves. That matters, because even {@link Files#getFileStore(Path)} blocks if an NFS server doesn't respond. On
+ * other operating systems, {@link FileStore#type()} is used for single paths, and mount points inside of search
+ * directories aren't known.
+ */
+class MountTable {
+
+    static final Path MOUNT_INFO = Paths.get("/proc/self/mountinfo");
+
+    /**
+     * File system types whose directories are served over the network
+     */
+    private static final Set<String> REMOTE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "nfs", "nfs4", "cifs", "smb3", "smbfs", "afs", "ncpfs", "9p", "ceph", "glusterfs", "lustre", "gpfs",
+            "davfs", "webdav", "sshfs", "coda"
+    )));
+
+    /**
+     * FUSE file systems that are local: fuseblk is backed by a block device, e.g. NTFS-3G or exFAT, and fusectl is
+     * FUSE's control file system
+     */
+    private static final Set<String> LOCAL_FUSE_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "fuseblk", "fusectl"
+    )));
+
+    static final MountTable EMPTY = new MountTable(Collections.emptyMap());
+
+    private final @NotNull Map<Path, String> typesByMountPoint;
+    private final @NotNull Set<Path> slowMountPoints = new HashSet<>();
+
+    private MountTable(@NotNull Map<Path, String> typesByMountPoint) {
+        this.typesByMountPoint = typesByMountPoint;
+        for (Map.Entry<Path, String> mount : typesByMountPoint.entrySet()) {
+            if (isSlowType(mount.getValue())) {
+                slowMountPoints.add(mount.getKey());
+            }
+        }
+    }
+
+    /**
+     * Reads the current mount table. Returns an empty table on other operating systems than Linux, or if it can't be
+     * read.
+     */
+    static @NotNull MountTable load(@NotNull OperatingSystem os) {
+        if (os != OperatingSystem.LINUX) {
+            return EMPTY;
+        }
+        try {
+            return parse(Files.readAllLines(MOUNT_INFO, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Parses the lines of /proc/self/mountinfo, e.g.
+     * {@code 36 35 98:0 /mnt1 /mnt2 rw,noatime master:1 - ext3 /dev/root rw,errors=continue}
+     */
+    static @NotNull MountTable parse(@NotNull List<String> mountInfo) {
+        Map<Path, String> typesByMountPoint = new HashMap<>();
+        for (String line : mountInfo) {
+            List<String> fields = Arrays.asList(line.split(" "));
+            // The number of optional fields varies, so the file system type is found relative to their "-" terminator
+            int separator = fields.indexOf("-");
+            if (fields.size() < 5 || separator < 0 || separator + 1 >= fields.size()) {
+                continue;
+            }
+            // Later mounts hide earlier ones at the same mount point
+            typesByMountPoint.put(Paths.get(unescape(fields.get(4))), fields.get(separator + 1));
+        }
+        return new MountTable(typesByMountPoint);
+    }
+
+    /**
+     * Decodes the octal escapes used for spaces, tabs, newlines and backslashes
+     */
+    private static @NotNull String unescape(@NotNull String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder result = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 3 < field.length()) {
+                result.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 3;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns whether the given file system type is a remote or FUSE file system
+     */
+    static boolean isSlowType(@NotNull String type) {
+        String lowerCaseType = type.toLowerCase(Locale.ROOT);
+        if (REMOTE_TYPES.contains(lowerCaseType)) {
+            return true;
+        }
+        // fuse, fuse.sshfs, fuse.rclone, ... and macFUSE's osxfuse and macfuse
+        return !LOCAL_FUSE_TYPES.contains(lowerCaseType) && (lowerCaseType.startsWith("fuse") || lowerCaseType.endsWith("fuse"));
+    }
+
+    /**
+     * Returns the type of the file system that the given path is on, or null if it's unknown
+     */
+    @Nullable String getType(@NotNull Path path) {
+        if (!typesByMountPoint.isEmpty()) {
+            for (Path current = path.toAbsolutePath().normalize(); current != null; current = current.getParent()) {
+                String type = typesByMountPoint.get(current);
+                if (type != null) {
+                    return type;
+                }
+            }
+            return null;
+        }
+        try {
+            return Files.getFileStore(path).type();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the given path is on a remote or FUSE file system
+     */
+    boolean isOnSlowFileSystem(@NotNull Path path) {
+        String type = getType(path);
+        return type != null && isSlowType(type);
+    }
+
+    /**
+     * Like {@link #isOnSlowFileSystem(Path)}, but never blocks, since it only looks at the mount table. Always false if
+     * the mount points are unknown.
+     */
+    boolean isOnKnownSlowFileSystem(@NotNull Path path) {
+        return !typesByMountPoint.isEmpty() && isOnSlowFileSystem(path);
+    }
+
+    /**
+     * Returns whether a remote or FUSE file system is mounted at the given directory. Always false if the mount
+     * points are unknown.
+     */
+    boolean isSlowMountPoint(@NotNull Path directory) {
+        return !slowMountPoints.isEmpty() && slowMountPoints.contains(directory);
+    }
+}
@@ -0,0 +1,151 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Finds the Java installations registered by the Linux package manager, without crawling /usr/lib/jvm:
+ * <ul>
+ *     <li>{@code /usr/lib/jvm/.*.jinfo} files written by Debian and Ubuntu packages</li>
+ *     <li>the update-alternatives state in {@code /var/lib/dpkg/alternatives} or {@code /var/lib/alternatives}</li>
+ *     <li>the currently selected alternatives in {@code /etc/alternatives}</li>
+ * </ul>
+ */
+class PackageMetadataSource implements DiscoverySource {
+
+    static final File JVM_DIRECTORY = new File("/usr/lib/jvm");
+
+    private static final String JINFO_SUFFIX = ".jinfo";
+    private static final String JINFO_ALIAS = "alias=";
+    private static final List<File> ALTERNATIVES_DIRECTORIES = Collections.unmodifiableList(Arrays.asList(
+            new File("/var/lib/dpkg/alternatives"),
+            new File("/var/lib/alternatives")
+    ));
+    private static final File ALTERNATIVES_LINKS = new File("/etc/alternatives");
+    private static final List<String> EXECUTABLE_NAMES = Collections.unmodifiableList(Arrays.asList("java", "javac"));
+
+    @Override
+    public @NotNull Collection<File> findHomes(@NotNull Predicate<File> isOnSlowFileSystem) {
+        Set<File> homes = findRegisteredHomes();
+
+        for (String name : EXECUTABLE_NAMES) {
+            try {
+                JavaHomeLayout.addHomeOfExecutable(new File(ALTERNATIVES_LINKS, name).toPath().toRealPath().toFile(), homes);
+            } catch (IOException | SecurityException ignored) {
+                // No alternative selected
+            }
+        }
+
+        return homes;
+    }
+
+    /**
+     * Only trusted if the package database itself lists installations in /usr/lib/jvm. Selected alternatives are
+     * always registered in the update-alternatives state as well, so they don't add anything the database doesn't know.
+     */
+    @Override
+    public @NotNull Collection<File> getCoveredDirectories(@NotNull Collection<File> homes) {
+        for (File home : homes) {
+            if (JVM_DIRECTORY.equals(home.getParentFile())) {
+                return Collections.singletonList(JVM_DIRECTORY);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the homes listed in the .jinfo files and the update-alternatives state
+     */
+    private static @NotNull Set<File> findRegisteredHomes() {
+        Set<File> homes = new LinkedHashSet<>();
+
+        File[] jinfoFiles = JVM_DIRECTORY.listFiles((directory, name) -> name.startsWith(".") && name.endsWith(JINFO_SUFFIX));
+        if (jinfoFiles != null) {
+            for (File jinfoFile : jinfoFiles) {
+                readJinfo(jinfoFile, homes);
+            }
+        }
+
+        for (File alternativesDirectory : ALTERNATIVES_DIRECTORIES) {
+            for (String name : EXECUTABLE_NAMES) {
+                readAlternatives(new File(alternativesDirectory, name), homes);
+            }
+        }
+        return homes;
+    }
+
+    /**
+     * Reads a .jinfo file. Besides some properties, they contain one line per executable, like
+     * {@code hl java /usr/lib/jvm/java-17-openjdk-amd64/bin/java}.
+     */
+    private static void readJinfo(@NotNull File jinfoFile, @NotNull Set<File> homes) {
+        try (BufferedReader reader = Files.newBufferedReader(jinfoFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(JINFO_ALIAS)) {
+                    // Usually a symlink to the installation, which will be reported as alias
+                    homes.add(new File(JVM_DIRECTORY, line.substring(JINFO_ALIAS.length()).trim()));
+                    continue;
+                }
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length == 3 && EXECUTABLE_NAMES.contains(parts[1])) {
+                    // Java 8 packages register the executables of their bundled JRE, so this also adds the JDK
+                    JavaHomeLayout.addHomeOfExecutable(new File(parts[2]), homes);
+                }
+            }
+        } catch (IOException | SecurityException ignored) {
+
+        }
+    }
+
+    /**
+     * Reads an update-alternatives state file. The first two lines contain the mode and the link, like /usr/bin/java,
+     * followed by the slave links and the registered alternatives, one path or priority per line.
+     */
+    private static void readAlternatives(@NotNull File alternativesFile, @NotNull Set<File> homes) {
+        if (!alternativesFile.isFile()) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(alternativesFile.toPath(), StandardCharsets.UTF_8);
+            for (int i = 2; i < lines.size(); i++) {
+                File file = new File(lines.get(i).trim());
+                if (file.isAbsolute() && EXECUTABLE_NAMES.contains(file.getName())) {
+                    JavaHomeLayout.addHomeOfExecutable(file, homes);
+                }
+            }
+        } catch (IOException | SecurityException ignored) {
+
+        }
+    }
+}
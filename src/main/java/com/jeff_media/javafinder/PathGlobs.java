@@ -0,0 +1,93 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of glob patterns that are matched against absolute paths, see {@link JavaFinderBuilder#includePaths(String...)}
+ * and {@link JavaFinderBuilder#excludePaths(String...)}
+ */
+class PathGlobs {
+
+    static final PathGlobs NONE = new PathGlobs(Collections.emptyList());
+
+    private final @NotNull List<String> patterns;
+    private final @NotNull List<PathMatcher> matchers = new ArrayList<>();
+
+    private PathGlobs(@NotNull List<String> patterns) {
+        this.patterns = patterns;
+        for (String pattern : patterns) {
+            matchers.add(compile(pattern));
+        }
+    }
+
+    static @NotNull PathGlobs of(@NotNull Collection<String> patterns) {
+        if (patterns.isEmpty()) {
+            return NONE;
+        }
+        return new PathGlobs(Collections.unmodifiableList(new ArrayList<>(patterns)));
+    }
+
+    /**
+     * Compiles a single glob pattern for the default file system
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     */
+    static @NotNull PathMatcher compile(@NotNull String pattern) {
+        return FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+    }
+
+    boolean isEmpty() {
+        return matchers.isEmpty();
+    }
+
+    /**
+     * Returns whether the absolute path of the given path matches any of the patterns
+     */
+    boolean matches(@NotNull Path path) {
+        if (matchers.isEmpty()) {
+            return false;
+        }
+        Path absolutePath = path.toAbsolutePath();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(absolutePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull List<String> getPatterns() {
+        return patterns;
+    }
+
+}
@@ -0,0 +1,257 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs {@code java -version} with a limited number of concurrent processes and a deadline per process. Searches run
+ * their probes on this prober's {@link #getExecutor() executor}, so crawling doesn't wait for them.
+ */
+class ProbeExecutor {
+
+    static final int DEFAULT_MAX_CONCURRENT_PROBES = Math.max(1, Runtime.getRuntime().availableProcessors());
+    static final Duration DEFAULT_PROBE_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final long POLL_INTERVAL_MILLIS = 5;
+    private static final long PERMIT_POLL_INTERVAL_MILLIS = 50;
+
+    /**
+     * Passed to {@link #probe(File, long)} if only the timeout of the process itself applies
+     */
+    static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    /**
+     * Passed to {@link #probe(File, long, BooleanSupplier)} if the probe can't be cancelled
+     */
+    static final BooleanSupplier NOT_CANCELLABLE = () -> false;
+
+    /**
+     * Used by the public {@link JavaInstallation} constructors
+     */
+    static final ProbeExecutor DEFAULT = new ProbeExecutor(DEFAULT_MAX_CONCURRENT_PROBES, DEFAULT_PROBE_TIMEOUT, true, DefaultExecutors.probe());
+
+    private final Semaphore permits;
+    private final long timeoutMillis;
+    private final boolean retainOutput;
+    private final Executor executor;
+
+    ProbeExecutor(int maxConcurrentProbes, @NotNull Duration timeout, boolean retainOutput, @NotNull Executor executor) {
+        this.permits = new Semaphore(maxConcurrentProbes, true);
+        this.timeoutMillis = timeout.toMillis();
+        this.retainOutput = retainOutput;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor that version detection tasks run on
+     */
+    @NotNull Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns how long a single {@code java -version} process may take
+     */
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Returns whether the output of {@code java -version} is kept in the detected versions
+     */
+    boolean isRetainOutput() {
+        return retainOutput;
+    }
+
+    /**
+     * Runs {@code java -version} and parses its output. Never throws - every problem is reported through the returned result.
+     */
+    @NotNull ProbeResult probe(@NotNull File javaExecutable) {
+        return probe(javaExecutable, NO_DEADLINE);
+    }
+
+    /**
+     * Runs {@code java -version} and parses its output, but gives up once the given deadline has passed, even while
+     * still waiting for a free slot. The process gets killed and the probe is reported as timed out.
+     *
+     * @param deadline {@link System#nanoTime()} value, or {@link #NO_DEADLINE}
+     */
+    @NotNull ProbeResult probe(@NotNull File javaExecutable, long deadline) {
+        return probe(javaExecutable, deadline, NOT_CANCELLABLE);
+    }
+
+    /**
+     * Like {@link #probe(File, long)}, but also gives up once the given condition becomes true, e.g. because the
+     * search that needs the version has found what it was looking for. The process gets killed and the probe is
+     * reported as failed.
+     *
+     * @param cancelled checked while waiting for a free slot and for the process
+     */
+    @NotNull ProbeResult probe(@NotNull File javaExecutable, long deadline, @NotNull BooleanSupplier cancelled) {
+        try {
+            if (!acquirePermit(deadline, cancelled)) {
+                return cancelled.getAsBoolean() ? cancelled(javaExecutable, new ArrayList<>()) : ProbeResult.timedOut(javaExecutable, new ArrayList<>());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ProbeResult.failed(javaExecutable, e, new ArrayList<>());
+        }
+        try {
+            long start = System.nanoTime();
+            ProbeResult result = run(javaExecutable, deadline, cancelled);
+            return result.withProcess(Duration.ofNanos(System.nanoTime() - start));
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Waits for a free slot. Returns false if the deadline passed or the probe got cancelled first.
+     */
+    private boolean acquirePermit(long deadline, @NotNull BooleanSupplier cancelled) throws InterruptedException {
+        long intervalNanos = cancelled == NOT_CANCELLABLE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(PERMIT_POLL_INTERVAL_MILLIS);
+        while (!cancelled.getAsBoolean()) {
+            long waitNanos = intervalNanos;
+            if (deadline != NO_DEADLINE) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                waitNanos = Math.min(waitNanos, remainingNanos);
+            }
+            if (permits.tryAcquire(waitNanos, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static @NotNull ProbeResult cancelled(@NotNull File javaExecutable, @NotNull List<String> output) {
+        return ProbeResult.failed(javaExecutable, new CancellationException("The search has been cancelled"), output);
+    }
+
+    /**
+     * Reads the combined stdout and stderr of the process on the calling thread. Only available output is read, since
+     * a child process of the executable, like the sleep of a wrapper script, might keep the pipe open after the
+     * process itself has been killed.
+     */
+    private @NotNull ProbeResult run(@NotNull File javaExecutable, long scanDeadline, @NotNull BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            return cancelled(javaExecutable, new ArrayList<>());
+        }
+        Process process;
+        try {
+            process = new ProcessBuilder(javaExecutable.getAbsolutePath(), "-version")
+                    .redirectErrorStream(true)
+                    .start();
+        } catch (IOException e) {
+            return ProbeResult.failed(javaExecutable, e, new ArrayList<>());
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (scanDeadline != NO_DEADLINE && scanDeadline - deadline < 0) {
+            deadline = scanDeadline;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            process.getOutputStream().close();
+            InputStream in = process.getInputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                // Checked before reading, so everything written before the exit gets read
+                boolean exited = !process.isAlive();
+                int available;
+                while ((available = in.available()) > 0) {
+                    int read = in.read(buffer, 0, Math.min(available, buffer.length));
+                    if (read < 0) {
+                        break;
+                    }
+                    output.write(buffer, 0, read);
+                }
+                if (exited) {
+                    break;
+                }
+                long remainingMillis = remainingMillis(deadline);
+                if (remainingMillis == 0) {
+                    return ProbeResult.timedOut(javaExecutable, toLines(output));
+                }
+                if (cancelled.getAsBoolean()) {
+                    return cancelled(javaExecutable, toLines(output));
+                }
+                // Returns right away once the process exits
+                process.waitFor(Math.min(POLL_INTERVAL_MILLIS, remainingMillis), TimeUnit.MILLISECONDS);
+            }
+            int exitValue = process.exitValue();
+            if (exitValue != 0) {
+                return ProbeResult.failed(javaExecutable,
+                        new IOException(javaExecutable.getAbsolutePath() + " -version exited with code " + exitValue), toLines(output));
+            }
+            return ProbeResult.parsed(javaExecutable, JavaVersion.fromJavaVersionOutput(toLines(output), retainOutput));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ProbeResult.failed(javaExecutable, e, toLines(output));
+        } catch (IOException | RuntimeException e) {
+            return ProbeResult.failed(javaExecutable, e, toLines(output));
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static @NotNull List<String> toLines(@NotNull ByteArrayOutputStream output) {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(new String(output.toByteArray(), Charset.defaultCharset())))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException ignored) {
+            // Can't happen for strings
+        }
+        return lines;
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
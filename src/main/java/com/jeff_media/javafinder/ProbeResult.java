@@ -0,0 +1,190 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of detecting the version of a single java executable
+ */
+public class ProbeResult {
+
+    /**
+     * Outcome of a version probe
+     */
+    public enum Status {
+        /**
+         * The version was detected successfully
+         */
+        PARSED,
+        /**
+         * The process couldn't be started, exited abnormally, or its output couldn't be parsed
+         */
+        FAILED,
+        /**
+         * The process didn't finish within the configured timeout and has been killed
+         */
+        TIMED_OUT
+    }
+
+    private final @NotNull File javaExecutable;
+    private final @NotNull Status status;
+    private final @Nullable JavaVersion version;
+    private final @Nullable Throwable error;
+    private final @NotNull List<String> output;
+    private final boolean processSpawned;
+    private final @NotNull Duration duration;
+
+    private ProbeResult(@NotNull File javaExecutable,
+                        @NotNull Status status,
+                        @Nullable JavaVersion version,
+                        @Nullable Throwable error,
+                        @NotNull List<String> output,
+                        boolean processSpawned,
+                        @NotNull Duration duration) {
+        this.javaExecutable = javaExecutable;
+        this.status = status;
+        this.version = version;
+        this.error = error;
+        this.output = output;
+        this.processSpawned = processSpawned;
+        this.duration = duration;
+    }
+
+    private ProbeResult(@NotNull File javaExecutable,
+                        @NotNull Status status,
+                        @Nullable JavaVersion version,
+                        @Nullable Throwable error,
+                        @NotNull List<String> output) {
+        this(javaExecutable, status, version, error, output, false, Duration.ZERO);
+    }
+
+    static ProbeResult parsed(@NotNull File javaExecutable, @NotNull JavaVersion version) {
+        return new ProbeResult(javaExecutable, Status.PARSED, version, null, version.getJavaVersionOutput());
+    }
+
+    static ProbeResult failed(@NotNull File javaExecutable, @NotNull Throwable error, @NotNull List<String> output) {
+        return new ProbeResult(javaExecutable, Status.FAILED, null, error, Collections.unmodifiableList(output));
+    }
+
+    static ProbeResult timedOut(@NotNull File javaExecutable, @NotNull List<String> output) {
+        return new ProbeResult(javaExecutable, Status.TIMED_OUT, null, null, Collections.unmodifiableList(output));
+    }
+
+    /**
+     * Returns a copy of this result that is marked as coming from a {@code java -version} process
+     */
+    ProbeResult withProcess(@NotNull Duration duration) {
+        return new ProbeResult(javaExecutable, status, version, error, output, true, duration);
+    }
+
+    /**
+     * Returns the probed java executable
+     *
+     * @return java executable
+     */
+    public @NotNull File getJavaExecutable() {
+        return javaExecutable;
+    }
+
+    /**
+     * Returns the outcome of this probe
+     *
+     * @return outcome
+     */
+    public @NotNull Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the detected version, or null if the status is not {@link Status#PARSED}
+     *
+     * @return detected version, or null
+     */
+    public @Nullable JavaVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the reason why the probe failed, or null if the status is not {@link Status#FAILED}
+     *
+     * @return reason of the failure, or null
+     */
+    public @Nullable Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Returns everything the process printed to stdout and stderr. This is empty if the version was read from the release file.
+     *
+     * @return output of the process
+     */
+    public @NotNull List<String> getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns whether a {@code java -version} process has been started for this probe. This is false if the version
+     * was read from the release file.
+     *
+     * @return whether a process has been started
+     */
+    public boolean isProcessSpawned() {
+        return processSpawned;
+    }
+
+    /**
+     * Returns how long the {@code java -version} process took, or zero if no process has been started
+     *
+     * @return duration of the process
+     */
+    public @NotNull Duration getDuration() {
+        return duration;
+    }
+
+    @NotNull JavaVersion getVersionOrThrow() throws IOException {
+        switch (status) {
+            case PARSED:
+                return version;
+            case TIMED_OUT:
+                throw new IOException("Timed out while running " + javaExecutable.getAbsolutePath() + " -version");
+            default:
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                }
+                throw new IOException("Could not detect version of " + javaExecutable.getAbsolutePath(), error);
+        }
+    }
+
+    public String toString() {
+        return "ProbeResult(javaExecutable=" + this.getJavaExecutable() + ", status=" + this.getStatus() + ", version=" + this.getVersion() + ", error=" + this.getError() + ", processSpawned=" + this.isProcessSpawned() + ", duration=" + this.getDuration() + ")";
+    }
+}
@@ -0,0 +1,96 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the {@code release} file that is shipped in the home directory of (almost) every JDK and JRE since Java 7.
+ */
+class ReleaseFile {
+
+    static final String FILE_NAME = "release";
+
+    static final String JAVA_VERSION = "JAVA_VERSION";
+    static final String JAVA_RUNTIME_VERSION = "JAVA_RUNTIME_VERSION";
+    static final String FULL_VERSION = "FULL_VERSION";
+    static final String IMPLEMENTOR = "IMPLEMENTOR";
+    static final String OS_ARCH = "OS_ARCH";
+
+    private ReleaseFile() {
+
+    }
+
+    /**
+     * Reads the release file of the given Java home directory and returns its version, or null if the release file
+     * doesn't exist or can't be parsed.
+     */
+    static @Nullable JavaVersion readVersion(@NotNull File homeDirectory) {
+        File releaseFile = new File(homeDirectory, FILE_NAME);
+        if (!releaseFile.isFile()) {
+            return null;
+        }
+        try {
+            return JavaVersion.fromReleaseFile(releaseFile);
+        } catch (IOException | RuntimeException ignored) {
+            return null;
+        }
+    }
+
+    static @NotNull Map<String, String> read(@NotNull File releaseFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(releaseFile.toPath(), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Parses the KEY="value" lines of a release file. Unquoted values and comments are tolerated.
+     */
+    static @NotNull Map<String, String> parse(@NotNull BufferedReader reader) throws IOException {
+        Map<String, String> properties = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int separator = line.indexOf('=');
+            if (separator <= 0 || line.startsWith("#")) {
+                continue;
+            }
+            String key = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            properties.put(key, value);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,610 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * State shared by all {@link DirectoryCrawler}s of a single search.
+ */
+class ScanContext {
+
+    /**
+     * How long crawling a search directory on a remote or FUSE file system may take if no root timeout has been set
+     */
+    static final Duration DEFAULT_SLOW_ROOT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final @NotNull VersionDetectionMode versionDetectionMode;
+    private final @Nullable InstallationRegistry registry;
+    private final @NotNull ProbeExecutor probeExecutor;
+    private final @NotNull Executor crawlExecutor;
+    private final @Nullable Consumer<ProbeResult> probeListener;
+    private final boolean parallelCrawl;
+    private final @NotNull Set<String> excludedDirectoryNames;
+    private final @NotNull Set<JavaInstallation> installations = ConcurrentHashMap.newKeySet();
+    private final @NotNull Set<Object> visitedDirectories = ConcurrentHashMap.newKeySet();
+    private final @NotNull Map<Path, Set<File>> aliasesByExecutable = new ConcurrentHashMap<>();
+    private final @NotNull Queue<CompletableFuture<Void>> probes = new ConcurrentLinkedQueue<>();
+    private final @Nullable Consumer<JavaInstallation> installationListener;
+    private final @Nullable Consumer<LazyJavaInstallation> lazyInstallationListener;
+    private final boolean prefetchVersions;
+    private final @Nullable Consumer<Path> directoryListener;
+    private final @Nullable Consumer<ScanStatistics> statisticsListener;
+    private final @NotNull StatisticsRecorder statistics = new StatisticsRecorder();
+    private final @NotNull Set<File> unfinishedRoots = ConcurrentHashMap.newKeySet();
+    private final @NotNull Set<File> abandonedRoots = ConcurrentHashMap.newKeySet();
+    private final @NotNull Set<File> timedOutRoots = ConcurrentHashMap.newKeySet();
+    private final @NotNull Queue<File> deferredDirectories = new ConcurrentLinkedQueue<>();
+    private final @Nullable Duration budget;
+    private final long deadline;
+    private final @Nullable Duration rootTimeout;
+    private final @NotNull SlowFileSystemPolicy slowFileSystemPolicy;
+    private final @NotNull MountTable mountTable;
+    private final int maxDepth;
+    private final int maxDirectoriesPerRoot;
+    private final @NotNull PathGlobs includedPaths;
+    private final @NotNull PathGlobs excludedPaths;
+    private volatile boolean cancelled = false;
+
+    ScanContext(@NotNull JavaFinder finder) {
+        this(finder, null);
+    }
+
+    ScanContext(@NotNull JavaFinder finder, @Nullable Consumer<JavaInstallation> installationListener) {
+        this(finder, installationListener, null);
+    }
+
+    /**
+     * @param installationListener gets called once for every distinct installation as soon as it has been found
+     * @param directoryListener gets called for every directory whose entries are being searched, and for every search
+     *                          directory whose installations are known from package metadata instead
+     */
+    ScanContext(@NotNull JavaFinder finder,
+                @Nullable Consumer<JavaInstallation> installationListener,
+                @Nullable Consumer<Path> directoryListener) {
+        this(finder, installationListener, directoryListener, null);
+    }
+
+    private ScanContext(@NotNull JavaFinder finder,
+                        @Nullable Consumer<JavaInstallation> installationListener,
+                        @Nullable Consumer<Path> directoryListener,
+                        @Nullable Consumer<LazyJavaInstallation> lazyInstallationListener) {
+        this.installationListener = installationListener;
+        this.lazyInstallationListener = lazyInstallationListener;
+        this.prefetchVersions = finder.isPrefetchVersions();
+        this.directoryListener = directoryListener;
+        this.versionDetectionMode = finder.getVersionDetectionMode();
+        this.registry = finder.getRegistryFile() == null ? null : InstallationRegistry.open(finder.getRegistryFile());
+        this.probeExecutor = finder.getProbeExecutor();
+        this.crawlExecutor = finder.getCrawlExecutor();
+        this.probeListener = finder.getProbeListener();
+        this.parallelCrawl = finder.isParallelCrawl();
+        this.excludedDirectoryNames = finder.getExcludedDirectoryNames();
+        this.statisticsListener = finder.getStatisticsListener();
+        this.budget = finder.getScanBudget();
+        this.deadline = budget == null ? ProbeExecutor.NO_DEADLINE : System.nanoTime() + budget.toNanos();
+        this.rootTimeout = finder.getRootTimeout();
+        this.slowFileSystemPolicy = finder.getSlowFileSystemPolicy();
+        this.mountTable = slowFileSystemPolicy == SlowFileSystemPolicy.CRAWL ? MountTable.EMPTY : MountTable.load(OperatingSystem.CURRENT);
+        this.maxDepth = finder.getMaxDepth();
+        this.maxDirectoriesPerRoot = finder.getMaxDirectoriesPerRoot();
+        this.includedPaths = finder.getIncludedPaths();
+        this.excludedPaths = finder.getExcludedPaths();
+    }
+
+    /**
+     * Creates a context that doesn't detect versions while searching, but passes a {@link LazyJavaInstallation} for
+     * every distinct installation to the given listener instead
+     */
+    static @NotNull ScanContext forLazyInstallations(@NotNull JavaFinder finder, @NotNull Consumer<LazyJavaInstallation> listener) {
+        return new ScanContext(finder, null, null, listener);
+    }
+
+    @NotNull StatisticsRecorder getStatistics() {
+        return statistics;
+    }
+
+    @NotNull Executor getCrawlExecutor() {
+        return crawlExecutor;
+    }
+
+    boolean isParallelCrawl() {
+        return parallelCrawl;
+    }
+
+    boolean isExcludedDirectoryName(@NotNull String name) {
+        return excludedDirectoryNames.contains(name);
+    }
+
+    boolean isExcludedPath(@NotNull Path directory) {
+        return excludedPaths.matches(directory);
+    }
+
+    /**
+     * Returns whether a Java home at the given path may be added, see {@link JavaFinderBuilder#includePaths(String...)}
+     */
+    boolean isIncludedHome(@NotNull Path home) {
+        return includedPaths.isEmpty() || includedPaths.matches(home);
+    }
+
+    /**
+     * Returns how many levels below a search directory are searched
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns how many directories may be listed while crawling a single search directory
+     */
+    int getMaxDirectoriesPerRoot() {
+        return maxDirectoriesPerRoot;
+    }
+
+    /**
+     * Whether the depth or number of directories of a single crawl is limited. Then every search directory gets crawled
+     * on its own, even if it's inside of another one, because the other one may stop before reaching it.
+     */
+    boolean isBoundedCrawl() {
+        return maxDepth != Integer.MAX_VALUE || maxDirectoriesPerRoot != Integer.MAX_VALUE;
+    }
+
+    void onDirectoryListed(@NotNull Path directory) {
+        statistics.recordDirectoryListed();
+        if (directoryListener != null) {
+            directoryListener.accept(directory);
+        }
+    }
+
+    /**
+     * Marks a directory as visited. Returns false if it has already been visited during this search, e.g. because it
+     * has been reached through a symlink before.
+     *
+     * @param directoryKey an object that identifies the directory regardless of the path used to reach it
+     */
+    boolean markVisited(@NotNull Object directoryKey) {
+        return visitedDirectories.add(directoryKey);
+    }
+
+    /**
+     * Stops the search as soon as possible. Crawlers stop descending, no new versions will be probed and running
+     * {@code java -version} processes get killed.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns a future that completes with true once the given search has completed within the scan budget, or with
+     * false once the budget has run out. In the latter case, the search gets {@link #cancel() cancelled}
+     * and the future completes right away, without waiting for crawlers that are stuck in slow I/O.
+     */
+    @NotNull CompletableFuture<Boolean> withinBudget(@NotNull CompletableFuture<Void> search) {
+        if (budget == null) {
+            return search.thenApply(Void -> true);
+        }
+        // Probes that were killed because of the deadline might have let the search finish just before the timer
+        CompletableFuture<Boolean> finished = search.thenApply(Void -> deadline - System.nanoTime() > 0);
+        return completeOnTimeout(finished, deadline - System.nanoTime(), () -> {
+            cancel();
+            return false;
+        });
+    }
+
+    /**
+     * Returns a future that completes like the given task, or with the value of the given supplier once the timeout
+     * has passed, whichever happens first. The task itself keeps running, so it has to check whether it should stop.
+     */
+    static <T> @NotNull CompletableFuture<T> completeOnTimeout(@NotNull CompletableFuture<T> task, long timeoutNanos, @NotNull Supplier<T> onTimeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        task.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        ScheduledFuture<?> timeout = Timer.INSTANCE.schedule(() -> {
+            if (!result.isDone()) {
+                result.complete(onTimeout.get());
+            }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+        result.whenComplete((value, error) -> timeout.cancel(false));
+        return result;
+    }
+
+    /**
+     * Runs the given task on the timer thread once the given delay has passed. The task must not block.
+     */
+    static void schedule(@NotNull Runnable task, long delayNanos) {
+        Timer.INSTANCE.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns how long crawling a single search directory may take, or null if there is no timeout. Without a
+     * configured root timeout, search directories on remote or FUSE file systems still get
+     * {@link #DEFAULT_SLOW_ROOT_TIMEOUT}, so a hung mount can't stall the search forever.
+     *
+     * @param slowFileSystem whether the search directory is on a remote or FUSE file system
+     */
+    @Nullable Duration getRootTimeout(boolean slowFileSystem) {
+        if (rootTimeout != null || !slowFileSystem) {
+            return rootTimeout;
+        }
+        return DEFAULT_SLOW_ROOT_TIMEOUT;
+    }
+
+    /**
+     * Marks a search directory whose crawl has been abandoned because of the {@link #getRootTimeout(boolean) root timeout}
+     * or because it has reached the {@link #getMaxDirectoriesPerRoot() maximum number of directories}
+     *
+     * @param timedOut whether it has been abandoned because of the timeout
+     */
+    void abandonRoot(@NotNull File root, boolean timedOut) {
+        abandonedRoots.add(root);
+        if (timedOut) {
+            timedOutRoots.add(root);
+        }
+    }
+
+    /**
+     * Returns the search directories whose crawl has been abandoned because of the root timeout or the maximum number
+     * of directories
+     */
+    @NotNull Set<File> getAbandonedRoots() {
+        return abandonedRoots;
+    }
+
+    /**
+     * Returns the search directories whose crawl has been abandoned because of the root timeout
+     */
+    @NotNull Set<File> getTimedOutRoots() {
+        return timedOutRoots;
+    }
+
+    @NotNull SlowFileSystemPolicy getSlowFileSystemPolicy() {
+        return slowFileSystemPolicy;
+    }
+
+    /**
+     * Returns whether the given search directory is on a remote or FUSE file system. Off Linux, this asks the file
+     * system itself, which blocks if it doesn't respond.
+     */
+    boolean isOnSlowFileSystem(@NotNull File directory) {
+        return slowFileSystemPolicy != SlowFileSystemPolicy.CRAWL && mountTable.isOnSlowFileSystem(directory.toPath());
+    }
+
+    /**
+     * Like {@link #isOnSlowFileSystem(File)}, but never blocks. Always false off Linux, where the mount points are
+     * unknown.
+     */
+    boolean isOnKnownSlowFileSystem(@NotNull File directory) {
+        return slowFileSystemPolicy != SlowFileSystemPolicy.CRAWL && mountTable.isOnKnownSlowFileSystem(directory.toPath());
+    }
+
+    /**
+     * Returns whether the crawler must not descend into the given directory because a remote or FUSE file system is
+     * mounted there. Depending on the {@link SlowFileSystemPolicy}, it's either skipped or crawled later, see
+     * {@link #pollDeferredDirectories()}.
+     */
+    boolean skipMountPoint(@NotNull Path directory) {
+        if (!mountTable.isSlowMountPoint(directory)) {
+            return false;
+        }
+        if (slowFileSystemPolicy == SlowFileSystemPolicy.DEPRIORITIZE) {
+            deferredDirectories.add(directory.toFile());
+        }
+        return true;
+    }
+
+    /**
+     * Returns and forgets the mount points that have been deferred by {@link #skipMountPoint(Path)}, so they can be
+     * crawled as search directories of their own
+     */
+    @NotNull List<File> pollDeferredDirectories() {
+        List<File> result = new ArrayList<>();
+        File directory;
+        while ((directory = deferredDirectories.poll()) != null) {
+            result.add(directory);
+        }
+        return result;
+    }
+
+    /**
+     * Marks the given search directories as not yet crawled
+     */
+    void addRoots(@NotNull Collection<File> roots) {
+        unfinishedRoots.addAll(roots);
+    }
+
+    /**
+     * Marks a search directory as covered by a {@link DiscoverySource}, so it doesn't have to be crawled
+     */
+    void onDirectoryCovered(@NotNull File root) {
+        onRootFinished(root);
+        if (directoryListener != null) {
+            directoryListener.accept(root.toPath());
+        }
+    }
+
+    /**
+     * Marks a search directory as crawled. Crawls that only returned because the search has been cancelled don't count.
+     */
+    void onRootFinished(@NotNull File root) {
+        if (!cancelled) {
+            unfinishedRoots.remove(root);
+        }
+    }
+
+    /**
+     * Returns the search directories passed to {@link #addRoots(Collection)} that haven't been crawled completely,
+     * including slow mount points that have been deferred but not crawled yet
+     */
+    @NotNull Set<File> getUnfinishedRoots() {
+        Set<File> result = new HashSet<>(unfinishedRoots);
+        result.addAll(deferredDirectories);
+        return result;
+    }
+
+    /**
+     * Returns all distinct installations found so far
+     */
+    @NotNull Set<JavaInstallation> getInstallations() {
+        return installations;
+    }
+
+    /**
+     * Creates a {@link JavaInstallation} on the probe executor and adds it to the found installations unless its
+     * version couldn't be detected. Use {@link #whenProbesFinished()} to wait for it.
+     * <p>
+     * Candidates are identified by the real path of their java executable, so every physical installation is only
+     * probed once. The installation uses the real home directory, and every other home directory it has been found
+     * through is added to its {@link JavaInstallation#getAliases() aliases}.
+     */
+    void addInstallation(@NotNull File homeDirectory,
+                         @NotNull File javaExecutable,
+                         @Nullable File javacExecutable,
+                         @NotNull JavaType type) {
+        if (cancelled) {
+            return;
+        }
+        statistics.recordCandidate();
+
+        Path realJavaExecutable = realPath(javaExecutable.toPath());
+        Path bin = realJavaExecutable.getParent();
+        Path realHome = bin == null ? null : bin.getParent();
+        Path binName = bin == null ? null : bin.getFileName();
+        if (realHome == null || binName == null || !JavaHomeLayout.isBinDirectory(binName.toString())) {
+            // The executable is linked to something that doesn't look like a Java home, so keep the path as it is
+            realHome = homeDirectory.toPath();
+        }
+
+        Set<File> aliases = ConcurrentHashMap.newKeySet();
+        Set<File> existingAliases = aliasesByExecutable.putIfAbsent(realJavaExecutable, aliases);
+        File realHomeDirectory = realHome.toFile();
+        if (!homeDirectory.equals(realHomeDirectory)) {
+            (existingAliases == null ? aliases : existingAliases).add(homeDirectory);
+        }
+        if (existingAliases != null) {
+            return;
+        }
+
+        if (realHome.equals(homeDirectory.toPath())) {
+            submitProbe(realHomeDirectory, realJavaExecutable.toFile(), javacExecutable, type, aliases);
+            return;
+        }
+        Path realJavac = bin.resolve(OperatingSystem.CURRENT.getJavacExecutableName());
+        statistics.recordStatCalls(1);
+        boolean isJdk = Files.isExecutable(realJavac);
+        submitProbe(realHomeDirectory, realJavaExecutable.toFile(), isJdk ? realJavac.toFile() : null, isJdk ? JavaType.JDK : JavaType.JRE, aliases);
+    }
+
+    private void submitProbe(@NotNull File homeDirectory,
+                             @NotNull File javaExecutable,
+                             @Nullable File javacExecutable,
+                             @NotNull JavaType type,
+                             @NotNull Set<File> aliases) {
+        if (lazyInstallationListener != null) {
+            LazyJavaInstallation installation = new LazyJavaInstallation(homeDirectory, javaExecutable, javacExecutable, type, aliases,
+                    lookupCachedVersion(javaExecutable), () -> detectVersionLater(homeDirectory, javaExecutable, javacExecutable, type),
+                    probeExecutor.getExecutor());
+            if (prefetchVersions) {
+                installation.getProbeResultAsync();
+            }
+            lazyInstallationListener.accept(installation);
+            return;
+        }
+        probes.add(CompletableFuture.runAsync(() -> {
+            if (cancelled) {
+                return;
+            }
+            JavaInstallation installation = createInstallation(homeDirectory, javaExecutable, javacExecutable, type, aliases);
+            if (installation != null && !cancelled && installations.add(installation) && installationListener != null) {
+                installationListener.accept(installation);
+            }
+        }, probeExecutor.getExecutor()));
+    }
+
+    /**
+     * Returns a future that completes once all installations added so far have been probed. Once crawling has
+     * finished, no more installations are added, so this completes once the whole search has finished.
+     */
+    @NotNull CompletableFuture<Void> whenProbesFinished() {
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private @NotNull Path realPath(@NotNull Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            return path.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * Creates a {@link JavaInstallation}. Returns null if the version couldn't be detected.
+     */
+    private @Nullable JavaInstallation createInstallation(@NotNull File homeDirectory,
+                                                  @NotNull File javaExecutable,
+                                                  @Nullable File javacExecutable,
+                                                  @NotNull JavaType type,
+                                                  @NotNull Set<File> aliases) {
+        ProbeResult result = detectVersion(homeDirectory, javaExecutable, javacExecutable, type, deadline, this::isCancelled);
+        if (result.getStatus() != ProbeResult.Status.PARSED) {
+            return null;
+        }
+        return new JavaInstallation(homeDirectory, javaExecutable, javacExecutable, type, result.getVersion(), aliases);
+    }
+
+    /**
+     * Detects the version of an installation, reusing the version stored in the registry if it's still valid
+     *
+     * @param deadline {@link System#nanoTime()} value after which a running probe gets killed, or
+     *                 {@link ProbeExecutor#NO_DEADLINE}
+     * @param cancelled kills a running probe once it becomes true
+     */
+    private @NotNull ProbeResult detectVersion(@NotNull File homeDirectory,
+                                               @NotNull File javaExecutable,
+                                               @Nullable File javacExecutable,
+                                               @NotNull JavaType type,
+                                               long deadline,
+                                               @NotNull BooleanSupplier cancelled) {
+        BasicFileAttributes attributes = registry == null ? null : readAttributes(javaExecutable);
+        JavaVersion cachedVersion = attributes == null ? null : registry.lookup(javaExecutable, attributes);
+        if (cachedVersion != null) {
+            return ProbeResult.parsed(javaExecutable, cachedVersion);
+        }
+
+        ProbeResult result = JavaInstallation.probeVersion(homeDirectory, javaExecutable, versionDetectionMode, probeExecutor, deadline, cancelled);
+        statistics.recordProbe(result);
+        if (probeListener != null) {
+            probeListener.accept(result);
+        }
+        if (result.getStatus() == ProbeResult.Status.PARSED && attributes != null) {
+            registry.record(new JavaInstallation(homeDirectory, javaExecutable, javacExecutable, type, result.getVersion()), attributes);
+        }
+        return result;
+    }
+
+    /**
+     * Detects the version of a {@link LazyJavaInstallation}, usually after the search has finished, so the registry
+     * has to be saved again. The scan budget doesn't apply anymore.
+     */
+    private @NotNull ProbeResult detectVersionLater(@NotNull File homeDirectory,
+                                                    @NotNull File javaExecutable,
+                                                    @Nullable File javacExecutable,
+                                                    @NotNull JavaType type) {
+        // Not bound to the search anymore, so it isn't cancelled together with it
+        ProbeResult result = detectVersion(homeDirectory, javaExecutable, javacExecutable, type, ProbeExecutor.NO_DEADLINE, ProbeExecutor.NOT_CANCELLABLE);
+        if (result.getStatus() == ProbeResult.Status.PARSED && registry != null) {
+            saveRegistry();
+        }
+        return result;
+    }
+
+    private @Nullable JavaVersion lookupCachedVersion(@NotNull File javaExecutable) {
+        if (registry == null) {
+            return null;
+        }
+        BasicFileAttributes attributes = readAttributes(javaExecutable);
+        return attributes == null ? null : registry.lookup(javaExecutable, attributes);
+    }
+
+    private @Nullable BasicFileAttributes readAttributes(@NotNull File javaExecutable) {
+        try {
+            statistics.recordStatCalls(1);
+            return Files.readAttributes(javaExecutable.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            // Just don't use the registry for this one
+            return null;
+        }
+    }
+
+    private void saveRegistry() {
+        if (registry == null) {
+            return;
+        }
+        try {
+            registry.save();
+        } catch (IOException ignored) {
+            // The registry is only a cache, so failing to write it must not fail the search
+        }
+    }
+
+    /**
+     * Called once all crawlers have finished, or once the scan budget has run out. Returns the statistics of this
+     * search.
+     */
+    @NotNull ScanStatistics finish() {
+        saveRegistry();
+        ScanStatistics result = statistics.toStatistics();
+        if (statisticsListener != null) {
+            statisticsListener.accept(result);
+        }
+        return result;
+    }
+
+    /**
+     * Ends searches whose scan budget has run out and crawls whose root timeout has passed, and evicts expired results
+     * of the {@link SharedJavaFinder}. Only created once one of them is actually used.
+     */
+    private static final class Timer {
+
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "JavaFinder-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of {@link JavaFinder#scanAsync()}: the found installations, and whether the search has been cut short by the
+ * {@link JavaFinderBuilder#scanBudget(java.time.Duration) scan budget}, a
+ * {@link JavaFinderBuilder#rootTimeout(java.time.Duration) root timeout} or the
+ * {@link JavaFinderBuilder#maxDirectoriesPerRoot(int) maximum number of directories}.
+ */
+public class ScanResult {
+
+    private final @NotNull List<JavaInstallation> installations;
+    private final boolean partial;
+    private final boolean timedOut;
+    private final @NotNull Set<File> unfinishedRoots;
+    private final @NotNull ScanStatistics statistics;
+
+    ScanResult(@NotNull List<JavaInstallation> installations,
+               boolean partial,
+               boolean timedOut,
+               @NotNull Collection<File> unfinishedRoots,
+               @NotNull ScanStatistics statistics) {
+        this.installations = Collections.unmodifiableList(new ArrayList<>(installations));
+        this.partial = partial;
+        this.timedOut = timedOut;
+        this.unfinishedRoots = Collections.unmodifiableSet(new LinkedHashSet<>(unfinishedRoots));
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the found installations, sorted from newest to oldest, and JDKs before JREs of the same version. For a
+     * partial result, these are the installations whose version had been detected before the budget ran out.
+     *
+     * @return list of Java installations
+     */
+    public @NotNull List<JavaInstallation> getInstallations() {
+        return installations;
+    }
+
+    /**
+     * Returns an index of the found installations for lookups by major version and type
+     *
+     * @return index of the found installations
+     */
+    public @NotNull JavaInstallationIndex toIndex() {
+        return JavaInstallationIndex.of(installations);
+    }
+
+    /**
+     * Returns whether the search has been cut short, because it {@link #isTimedOut() timed out} or because a search
+     * directory contained more than the maximum number of directories. Other installations might exist in
+     * {@link #getUnfinishedRoots() unfinished roots}, or might have been found but not probed in time.
+     *
+     * @return whether this result is incomplete
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Returns whether the scan budget ran out or a root timeout passed before the search finished. Unlike the maximum
+     * number of directories, this depends on how fast the search was, so the same search may find more next time.
+     *
+     * @return whether this result is incomplete because of a timeout
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Returns the search directories that haven't been crawled completely. Always empty unless this result is
+     * {@link #isPartial() partial}.
+     *
+     * @return unfinished search directories
+     */
+    public @NotNull Set<File> getUnfinishedRoots() {
+        return unfinishedRoots;
+    }
+
+    /**
+     * Returns the statistics of this search, as passed to the
+     * {@link JavaFinderBuilder#statisticsListener(java.util.function.Consumer) statistics listener}
+     *
+     * @return statistics of this search
+     */
+    public @NotNull ScanStatistics getStatistics() {
+        return statistics;
+    }
+
+    public String toString() {
+        return "ScanResult(installations=" + this.getInstallations() + ", partial=" + this.isPartial() + ", timedOut=" + this.isTimedOut() + ", unfinishedRoots=" + this.getUnfinishedRoots() + ", statistics=" + this.getStatistics() + ")";
+    }
+}
@@ -0,0 +1,165 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics about a single search, see {@link JavaFinderBuilder#statisticsListener(java.util.function.Consumer)}
+ */
+public class ScanStatistics {
+
+    private final @NotNull Duration totalWallTime;
+    private final @NotNull Map<File, Duration> rootWallTimes;
+    private final long directoriesListed;
+    private final long statCalls;
+    private final long candidatesFound;
+    private final long probesSpawned;
+    private final long probesFailed;
+    private final long probesTimedOut;
+    private final long[] sortedProbeLatencies;
+
+    ScanStatistics(@NotNull Duration totalWallTime,
+                   @NotNull Map<File, Duration> rootWallTimes,
+                   long directoriesListed,
+                   long statCalls,
+                   long candidatesFound,
+                   long probesSpawned,
+                   long probesFailed,
+                   long probesTimedOut,
+                   long[] probeLatencies) {
+        this.totalWallTime = totalWallTime;
+        this.rootWallTimes = Collections.unmodifiableMap(new LinkedHashMap<>(rootWallTimes));
+        this.directoriesListed = directoriesListed;
+        this.statCalls = statCalls;
+        this.candidatesFound = candidatesFound;
+        this.probesSpawned = probesSpawned;
+        this.probesFailed = probesFailed;
+        this.probesTimedOut = probesTimedOut;
+        this.sortedProbeLatencies = probeLatencies.clone();
+        Arrays.sort(this.sortedProbeLatencies);
+    }
+
+    /**
+     * Returns the time from the start of the search until all search directories have been crawled
+     *
+     * @return total wall time
+     */
+    public @NotNull Duration getTotalWallTime() {
+        return totalWallTime;
+    }
+
+    /**
+     * Returns how long crawling each search directory took, including the version detection of the installations
+     * found in it, sorted from slowest to fastest
+     *
+     * @return wall time per search directory
+     */
+    public @NotNull Map<File, Duration> getRootWallTimes() {
+        return rootWallTimes;
+    }
+
+    /**
+     * Returns the number of directories whose entries have been listed
+     *
+     * @return number of listed directories
+     */
+    public long getDirectoriesListed() {
+        return directoriesListed;
+    }
+
+    /**
+     * Returns the number of file attribute lookups, e.g. checking whether something is a directory or is executable
+     *
+     * @return number of file attribute lookups
+     */
+    public long getStatCalls() {
+        return statCalls;
+    }
+
+    /**
+     * Returns the number of Java homes found, including those whose version couldn't be detected
+     *
+     * @return number of found Java homes
+     */
+    public long getCandidatesFound() {
+        return candidatesFound;
+    }
+
+    /**
+     * Returns the number of {@code java -version} processes that have been started
+     *
+     * @return number of started processes
+     */
+    public long getProbesSpawned() {
+        return probesSpawned;
+    }
+
+    /**
+     * Returns the number of version detections that failed, not including timed out ones
+     *
+     * @return number of failed version detections
+     */
+    public long getProbesFailed() {
+        return probesFailed;
+    }
+
+    /**
+     * Returns the number of {@code java -version} processes that have been killed because they took too long
+     *
+     * @return number of timed out processes
+     */
+    public long getProbesTimedOut() {
+        return probesTimedOut;
+    }
+
+    /**
+     * Returns the given percentile of the durations of all {@code java -version} processes, using the nearest-rank
+     * method. Returns zero if no process has been started.
+     *
+     * @param percentile percentile between 0 and 100, e.g. 50 for the median or 99
+     * @return the given percentile of the process durations
+     */
+    public @NotNull Duration getProbeLatencyPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        if (sortedProbeLatencies.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedProbeLatencies.length);
+        return Duration.ofNanos(sortedProbeLatencies[Math.max(0, rank - 1)]);
+    }
+
+    public String toString() {
+        return "ScanStatistics(totalWallTime=" + this.getTotalWallTime() + ", rootWallTimes=" + this.getRootWallTimes() + ", directoriesListed=" + this.getDirectoriesListed() + ", statCalls=" + this.getStatCalls() + ", candidatesFound=" + this.getCandidatesFound() + ", probesSpawned=" + this.getProbesSpawned() + ", probesFailed=" + this.getProbesFailed() + ", probesTimedOut=" + this.getProbesTimedOut() + ", probeLatencyP50=" + this.getProbeLatencyPercentile(50) + ", probeLatencyP90=" + this.getProbeLatencyPercentile(90) + ", probeLatencyP99=" + this.getProbeLatencyPercentile(99) + ", probeLatencyMax=" + this.getProbeLatencyPercentile(100) + ")";
+    }
+}
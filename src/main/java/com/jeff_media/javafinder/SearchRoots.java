@@ -0,0 +1,151 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A normalized set of search directories. Directories are canonicalized and inserted into a trie of their path
+ * components, so a directory that is covered by another one is dropped in time proportional to its path length. This
+ * guarantees that no directory is crawled twice, even with thousands of configured search directories.
+ */
+class SearchRoots {
+
+    private final Node trie = new Node();
+    private final boolean keepNested;
+
+    private SearchRoots(boolean keepNested) {
+        this.keepNested = keepNested;
+    }
+
+    /**
+     * Creates a normalized set from the given directories. Null entries and directories that don't exist are ignored.
+     */
+    static @NotNull SearchRoots of(@NotNull Collection<File> directories) {
+        return of(directories, false);
+    }
+
+    /**
+     * Creates a normalized set from the given directories. Null entries and directories that don't exist are ignored.
+     *
+     * @param keepNested whether directories that are inside of another one are kept
+     */
+    static @NotNull SearchRoots of(@NotNull Collection<File> directories, boolean keepNested) {
+        SearchRoots roots = new SearchRoots(keepNested);
+        for (File directory : directories) {
+            if (directory == null) continue;
+            File canonical = canonicalize(directory);
+            if (canonical.isDirectory()) {
+                roots.add(canonical);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Returns the canonical form of the given file, or its absolute form if it can't be canonicalized
+     */
+    static @NotNull File canonicalize(@NotNull File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException | SecurityException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private void add(@NotNull File canonical) {
+        Node node = trie;
+        for (String component : components(canonical)) {
+            if (node.directory != null && !keepNested) {
+                // Already covered by an ancestor
+                return;
+            }
+            node = node.children.computeIfAbsent(component, name -> new Node());
+        }
+        node.directory = canonical;
+        if (!keepNested) {
+            // Drop all previously added descendants
+            node.children.clear();
+        }
+    }
+
+    /**
+     * Whether the given directory is one of the search directories or inside of one of them
+     */
+    boolean covers(@NotNull File directory) {
+        Node node = trie;
+        for (String component : components(canonicalize(directory))) {
+            if (node.directory != null) {
+                return true;
+            }
+            node = node.children.get(component);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.directory != null;
+    }
+
+    /**
+     * Returns the remaining search directories. None of them is inside of another one, unless nested directories are
+     * kept.
+     */
+    @NotNull Set<File> getDirectories() {
+        Set<File> directories = new LinkedHashSet<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(trie);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.directory != null) {
+                directories.add(node.directory);
+            }
+            // Without nested directories, the children of a search directory have already been cleared
+            node.children.values().forEach(stack::push);
+        }
+        return directories;
+    }
+
+    private static @NotNull List<String> components(@NotNull File file) {
+        Path path = file.toPath();
+        List<String> components = new ArrayList<>(path.getNameCount() + 1);
+        Path root = path.getRoot();
+        components.add(root == null ? "" : root.toString());
+        for (Path name : path) {
+            components.add(name.toString());
+        }
+        return components;
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private @Nullable File directory;
+    }
+}
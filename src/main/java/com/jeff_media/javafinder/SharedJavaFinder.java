@@ -0,0 +1,214 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the results of searches between all callers in the same process. Concurrent searches for the same
+ * installations are coalesced into a single search, and completed results are cached for a configurable time, so
+ * many components calling it at the same moment during startup only cost one search.
+ * <p>
+ * Searches count as the same if their {@link JavaFinder}s have the same normalized search directories and the same
+ * options that influence which installations are found, even if they have been built separately. Executors and
+ * listeners don't count: the listeners of the finder that actually runs the search are called, and those of all other
+ * callers aren't. Results that {@link ScanResult#isTimedOut() timed out} and failed searches aren't cached. Expired
+ * results are evicted once their time to live has passed.
+ */
+public final class SharedJavaFinder {
+
+    /**
+     * Default time that completed results are cached for
+     */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+    private static final SharedJavaFinder INSTANCE = new SharedJavaFinder(DEFAULT_TIME_TO_LIVE);
+
+    private final @NotNull Map<List<Object>, Scan> scans = new ConcurrentHashMap<>();
+    private volatile long timeToLiveNanos;
+
+    /**
+     * Creates a new cache that is independent of the {@link #getInstance() process-wide one}
+     *
+     * @param timeToLive how long completed results are cached. Zero only coalesces concurrent searches.
+     */
+    public SharedJavaFinder(@NotNull Duration timeToLive) {
+        setTimeToLive(timeToLive);
+    }
+
+    /**
+     * Returns the process-wide instance
+     *
+     * @return the process-wide instance
+     */
+    public static @NotNull SharedJavaFinder getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets how long completed results are cached. Applies to results that are already cached, too. Default is
+     * {@link #DEFAULT_TIME_TO_LIVE}.
+     *
+     * @param timeToLive how long completed results are cached. Zero only coalesces concurrent searches.
+     */
+    public void setTimeToLive(@NotNull Duration timeToLive) {
+        if (timeToLive.isNegative()) {
+            throw new IllegalArgumentException("timeToLive must not be negative");
+        }
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Returns how long completed results are cached
+     *
+     * @return how long completed results are cached
+     */
+    public @NotNull Duration getTimeToLive() {
+        return Duration.ofNanos(timeToLiveNanos);
+    }
+
+    /**
+     * Finds Java installations using a finder built from {@link JavaFinder#builder()} with default settings
+     *
+     * @return future containing list of Java installations
+     * @see #findInstallationsAsync(JavaFinder)
+     */
+    public @NotNull CompletableFuture<List<JavaInstallation>> findInstallationsAsync() {
+        return findInstallationsAsync(JavaFinder.builder().build());
+    }
+
+    /**
+     * Returns the cached result of an equivalent search, joins an equivalent search that is still running, or starts
+     * a new search using {@link JavaFinder#scanAsync()}
+     *
+     * @param finder finder to search with, unless there's a cached or running equivalent search
+     * @return future containing list of Java installations, sorted from newest to oldest, and JDKs before JREs of the same version
+     */
+    public @NotNull CompletableFuture<List<JavaInstallation>> findInstallationsAsync(@NotNull JavaFinder finder) {
+        return scanAsync(finder).thenApply(ScanResult::getInstallations);
+    }
+
+    /**
+     * Returns the cached result of an equivalent search, joins an equivalent search that is still running, or starts
+     * a new search using {@link JavaFinder#scanAsync()}
+     *
+     * @param finder finder to search with, unless there's a cached or running equivalent search
+     * @return future containing the result of the search. Completing or cancelling it doesn't affect other callers.
+     */
+    public @NotNull CompletableFuture<ScanResult> scanAsync(@NotNull JavaFinder finder) {
+        List<Object> key = finder.getScanKey();
+        evictExpired();
+        while (true) {
+            Scan existing = scans.get(key);
+            if (existing != null && !existing.isExpired(timeToLiveNanos)) {
+                return existing.result.thenApply(result -> result);
+            }
+            Scan scan = new Scan();
+            if (existing == null ? scans.putIfAbsent(key, scan) == null : scans.replace(key, existing, scan)) {
+                CompletableFuture<ScanResult> search;
+                try {
+                    search = finder.scanAsync();
+                } catch (Throwable t) {
+                    search = new CompletableFuture<>();
+                    search.completeExceptionally(t);
+                }
+                search.whenComplete((result, error) -> {
+                    if (error != null || result.isTimedOut()) {
+                        scans.remove(key, scan);
+                    } else {
+                        scan.completedAt = System.nanoTime();
+                        scan.completed = true;
+                        scheduleEviction(key, scan, timeToLiveNanos);
+                    }
+                    if (error != null) {
+                        scan.result.completeExceptionally(error);
+                    } else {
+                        scan.result.complete(result);
+                    }
+                });
+                return scan.result.thenApply(result -> result);
+            }
+            // Another caller has started a search in the meantime, so join that one
+        }
+    }
+
+    /**
+     * Removes the given completed search once it has expired. If the time to live has been increased in the meantime,
+     * it's checked again later.
+     */
+    private void scheduleEviction(@NotNull List<Object> key, @NotNull Scan scan, long delayNanos) {
+        ScanContext.schedule(() -> {
+            long remainingNanos = timeToLiveNanos - (System.nanoTime() - scan.completedAt);
+            if (remainingNanos <= 0) {
+                scans.remove(key, scan);
+            } else if (scans.get(key) == scan) {
+                scheduleEviction(key, scan, remainingNanos);
+            }
+        }, delayNanos);
+    }
+
+    private void evictExpired() {
+        for (Map.Entry<List<Object>, Scan> entry : scans.entrySet()) {
+            if (entry.getValue().isExpired(timeToLiveNanos)) {
+                scans.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Discards all cached results, e.g. after installing or removing a JDK. Searches that are still running complete
+     * normally, but later calls start a new search.
+     */
+    public void invalidate() {
+        scans.clear();
+    }
+
+    /**
+     * Discards the cached result of searches equivalent to the given finder's
+     *
+     * @param finder finder whose cached result should be discarded
+     */
+    public void invalidate(@NotNull JavaFinder finder) {
+        scans.remove(finder.getScanKey());
+    }
+
+    /**
+     * A running or completed search
+     */
+    private static class Scan {
+
+        final @NotNull CompletableFuture<ScanResult> result = new CompletableFuture<>();
+        volatile long completedAt;
+        volatile boolean completed;
+
+        boolean isExpired(long timeToLiveNanos) {
+            return completed && System.nanoTime() - completedAt >= timeToLiveNanos;
+        }
+    }
+}
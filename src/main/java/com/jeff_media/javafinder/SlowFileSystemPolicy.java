@@ -0,0 +1,52 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * Enum representing how search directories on remote or FUSE file systems, like NFS, SMB or SSHFS, are crawled.
+ * Listing directories on those can take very long, or block forever if the server doesn't respond. FUSE file systems
+ * on local block devices, like NTFS-3G or exFAT drives, count as local.
+ * <p>
+ * On Linux, this also applies to such file systems that are mounted somewhere inside of a search directory. On other
+ * operating systems, only the search directories themselves are checked.
+ */
+public enum SlowFileSystemPolicy {
+    /**
+     * Crawls them like any other directory
+     */
+    CRAWL,
+    /**
+     * Crawls them after all other directories have been crawled, so the installations on local file systems are found
+     * first. Unless {@link JavaFinderBuilder#rootTimeout(java.time.Duration)} is set, crawling each of them is
+     * abandoned after 30 seconds. The same applies to installations found through {@code JAVA_HOME}, the {@code PATH}
+     * or the package manager.
+     */
+    DEPRIORITIZE,
+    /**
+     * Doesn't crawl them at all, not even if they've been found through {@code JAVA_HOME}, the {@code PATH} or the
+     * package manager. Off Linux, the directories on the {@code PATH} are still accessed to resolve their java
+     * executables.
+     */
+    SKIP;
+
+}
@@ -0,0 +1,95 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe collector for the numbers that end up in {@link ScanStatistics}
+ */
+class StatisticsRecorder {
+
+    private final long startNanos = System.nanoTime();
+    private final Map<File, Long> rootWallTimes = new ConcurrentHashMap<>();
+    private final LongAdder directoriesListed = new LongAdder();
+    private final LongAdder statCalls = new LongAdder();
+    private final LongAdder candidatesFound = new LongAdder();
+    private final LongAdder probesSpawned = new LongAdder();
+    private final LongAdder probesFailed = new LongAdder();
+    private final LongAdder probesTimedOut = new LongAdder();
+    private final Queue<Long> probeLatencies = new ConcurrentLinkedQueue<>();
+
+    void recordRoot(@NotNull File root, long wallTimeNanos) {
+        rootWallTimes.merge(root, wallTimeNanos, Long::sum);
+    }
+
+    void recordDirectoryListed() {
+        directoriesListed.increment();
+    }
+
+    void recordStatCalls(int count) {
+        statCalls.add(count);
+    }
+
+    void recordCandidate() {
+        candidatesFound.increment();
+    }
+
+    void recordProbe(@NotNull ProbeResult result) {
+        if (result.isProcessSpawned()) {
+            probesSpawned.increment();
+            probeLatencies.add(result.getDuration().toNanos());
+        }
+        if (result.getStatus() == ProbeResult.Status.FAILED) {
+            probesFailed.increment();
+        } else if (result.getStatus() == ProbeResult.Status.TIMED_OUT) {
+            probesTimedOut.increment();
+        }
+    }
+
+    @NotNull ScanStatistics toStatistics() {
+        Map<File, Duration> roots = new LinkedHashMap<>();
+        rootWallTimes.entrySet().stream()
+                .sorted(Map.Entry.<File, Long>comparingByValue().reversed())
+                .forEach(entry -> roots.put(entry.getKey(), Duration.ofNanos(entry.getValue())));
+        return new ScanStatistics(Duration.ofNanos(System.nanoTime() - startNanos),
+                roots,
+                directoriesListed.sum(),
+                statCalls.sum(),
+                candidatesFound.sum(),
+                probesSpawned.sum(),
+                probesFailed.sum(),
+                probesTimedOut.sum(),
+                probeLatencies.stream().mapToLong(Long::longValue).toArray());
+    }
+}
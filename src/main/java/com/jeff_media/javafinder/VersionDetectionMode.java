@@ -0,0 +1,45 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+/**
+ * Enum representing the way the {@link JavaVersion} of a Java installation is detected.
+ */
+public enum VersionDetectionMode {
+    /**
+     * Reads the {@code release} file in the Java home directory and only runs {@code java -version} if that file is
+     * missing or can't be parsed
+     */
+    AUTO,
+    /**
+     * Only reads the {@code release} file in the Java home directory. Installations without a parseable release file
+     * will be ignored.
+     */
+    RELEASE_FILE,
+    /**
+     * Always runs {@code java -version}
+     */
+    PROCESS;
+
+}
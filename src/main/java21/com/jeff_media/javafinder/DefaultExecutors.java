@@ -0,0 +1,55 @@
+package com.jeff_media.javafinder;
+
+/*-
+ * #%L
+ * JavaFinder
+ * %%
+ * Copyright (C) 2023 JEFF Media GbR
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors used for crawling and probing unless others have been set in the {@link JavaFinderBuilder}. Both mostly
+ * wait for I/O, so every task gets its own virtual thread. Blocking a virtual thread only parks it, so thousands of
+ * directories or probes can wait at the same time without tying up platform threads.
+ * <p>
+ * This is the Java 21 version of this class, used through the multi-release JAR. The Java 8 version uses a pool of
+ * daemon threads instead.
+ */
+final class DefaultExecutors {
+
+    private static final Executor CRAWL = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("JavaFinder-crawl-", 0).factory());
+    private static final Executor PROBE = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("JavaFinder-probe-", 0).factory());
+
+    private DefaultExecutors() {
+
+    }
+
+    static @NotNull Executor crawl() {
+        return CRAWL;
+    }
+
+    static @NotNull Executor probe() {
+        return PROBE;
+    }
+}